@@ -1,33 +1,242 @@
 package gitlet;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
 
 /**
  * Blob represents binary large object,
  * and can be used to store content of a file.
+ * Blobs are immutable, so their SHA-1 value is computed once.
+ * <p>
+ * The content of a blob created from a file or read from the object store
+ * is never held in memory as a whole. It is hashed, stored and saved in
+ * chunks of {@link Blob#CHUNK_SIZE} bytes, so the memory needed does not
+ * depend on the size of the file.
+ * <p>
+ * A blob of at most {@link Blob#MAX_DELTA_SIZE} bytes may instead be stored
+ * as a delta against another blob, its base, see {@link Delta}. The payload
+ * of such a blob is the SHA-1 value of the base in 20 bytes, the length of
+ * the chain of deltas ending at this blob in one byte, and the delta. Chains
+ * are at most {@link Blob#MAX_DEPTH} deltas long, so reading a blob never
+ * reads more than that many other blobs.
  *
  * @author Fei Pan
  */
 public class Blob implements GitletObject {
-    private byte[] data;
+    /**
+     * Fixed so that objects stored by earlier versions can still be read.
+     */
+    private static final long serialVersionUID = -7006489740487755175L;
+
+    /**
+     * Number of bytes processed at a time when streaming content.
+     */
+    static final int CHUNK_SIZE = 1 << 16;
+    /**
+     * Maximum size of a blob, and of its base, for it to be stored as a delta.
+     */
+    static final int MAX_DELTA_SIZE = 1 << 25;
+    /**
+     * Maximum length of a chain of deltas.
+     */
+    static final int MAX_DEPTH = 10;
+
+    /**
+     * Content of the blob, or null if the content is in a file
+     * or in the object store.
+     */
+    private final byte[] data;
+    /**
+     * File the blob was created from, or null.
+     */
+    private final transient File source;
+    /**
+     * Whether the blob is stored as a delta.
+     */
+    private final transient boolean isDelta;
+    /**
+     * SHA-1 value of the blob. Not part of the serialized form, and
+     * restored from the object name when read from the object store.
+     */
+    private transient String sha1;
 
     /**
      * Creates a Blob object from the specified file.
+     * The file is hashed in chunks but not read into memory.
      *
      * @param f file to create Blob from
      */
     public Blob(File f) {
-        this.data = Utils.readContents(f);
+        this(null, f, null, false);
+        MessageDigest md = Utils.sha1Digest();
+        try (FileChannel in = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+            while (in.read(buffer) >= 0) {
+                buffer.flip();
+                md.update(buffer);
+                buffer.clear();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        this.sha1 = Utils.toHex(md.digest());
     }
 
-
     /**
      * Creates a Blob object from bytes.
      *
      * @param data data
      */
     public Blob(byte[] data) {
+        this(data, null, Utils.sha1((Object) data), false);
+    }
+
+    /**
+     * Creates a Blob object with the specified fields.
+     *
+     * @param data   content, or null
+     * @param source file holding the content, or null
+     * @param sha1   SHA-1 value of the content
+     * @param delta  whether the blob is stored as a delta
+     */
+    private Blob(byte[] data, File source, String sha1, boolean delta) {
         this.data = data;
+        this.source = source;
+        this.sha1 = sha1;
+        this.isDelta = delta;
+    }
+
+    /**
+     * Returns a blob of the specified file whose SHA-1 value is already
+     * known, such as from the {@link StatCache}, without reading the file.
+     * Storing the blob checks the SHA-1 value against the content.
+     *
+     * @param f    file to create Blob from
+     * @param sha1 SHA-1 value of the content of the file
+     * @return a blob
+     */
+    static Blob ofFile(File f, String sha1) {
+        return new Blob(null, f, sha1, false);
+    }
+
+    /**
+     * Returns a blob whose content is in the object store under
+     * the specified name, without reading the content.
+     *
+     * @param s     name of the blob in the object store
+     * @param delta whether the blob is stored as a delta
+     * @return a blob
+     */
+    static Blob stored(String s, boolean delta) {
+        return new Blob(null, null, s, delta);
+    }
+
+    /**
+     * Returns the whole content of the stored blob with SHA-1 value s, or
+     * null if the content is longer than limit. Deltas are resolved, and
+     * blobs serialized by earlier versions, with or without a header, are
+     * deserialized.
+     *
+     * @param s     SHA-1 value of the blob
+     * @param limit maximum length of the content
+     * @return the content, or null
+     */
+    static byte[] contentOf(String s, int limit) {
+        try (InputStream stored = GitletObject.open(s)) {
+            if (stored == null) {
+                throw new IOException("Blob " + s + " does not exist.");
+            }
+            byte[] header = stored.readNBytes(HEADER_LENGTH);
+            if (!GitletObject.hasHeader(header) || header[2] == TYPE_SERIALIZED) {
+                byte[] data = ((Blob) GitletObject.read(s)).data;
+                return data.length > limit ? null : data;
+            }
+            try (InputStream in = Codec.of(header[3]).decode(stored)) {
+                if (header[2] == TYPE_DELTA) {
+                    String base = Utils.toHex(in.readNBytes(Utils.UID_LENGTH / 2));
+                    in.skipNBytes(1);
+                    return Delta.apply(contentOf(base, Integer.MAX_VALUE), in.readAllBytes());
+                }
+                byte[] content = in.readNBytes(limit);
+                return in.read() >= 0 ? null : content;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Returns the length of the chain of deltas ending at the stored blob
+     * with SHA-1 value s, which is 0 if the blob is not stored as a delta.
+     *
+     * @param s SHA-1 value of the blob
+     * @return length of the chain
+     */
+    static int depthOf(String s) {
+        try (InputStream stored = GitletObject.open(s)) {
+            byte[] header = stored.readNBytes(HEADER_LENGTH);
+            if (!GitletObject.hasHeader(header) || header[2] != TYPE_DELTA) {
+                return 0;
+            }
+            try (InputStream in = Codec.of(header[3]).decode(stored)) {
+                in.skipNBytes(Utils.UID_LENGTH / 2);
+                return in.read();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Returns the SHA-1 value of the blob the stored blob with SHA-1 value s
+     * is a delta against, or null if it is not stored as a delta.
+     *
+     * @param s SHA-1 value of the blob
+     * @return SHA-1 value of the base, or null
+     */
+    static String baseOf(String s) {
+        try (InputStream stored = GitletObject.open(s)) {
+            byte[] header = stored.readNBytes(HEADER_LENGTH);
+            if (!GitletObject.hasHeader(header) || header[2] != TYPE_DELTA) {
+                return null;
+            }
+            try (InputStream in = Codec.of(header[3]).decode(stored)) {
+                return Utils.toHex(in.readNBytes(Utils.UID_LENGTH / 2));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Opens a stream of the content of the blob.
+     *
+     * @return an input stream of the content
+     * @throws IOException if the content cannot be read
+     */
+    private InputStream openContent() throws IOException {
+        if (data != null) {
+            return new ByteArrayInputStream(data);
+        }
+        if (source != null) {
+            return Files.newInputStream(source.toPath());
+        }
+        if (isDelta) {
+            return new ByteArrayInputStream(contentOf(sha1, Integer.MAX_VALUE));
+        }
+        InputStream in = GitletObject.openPayload(sha1);
+        if (in == null) {
+            throw new IOException("Blob " + sha1 + " does not exist.");
+        }
+        return in;
     }
 
     /**
@@ -36,7 +245,11 @@ public class Blob implements GitletObject {
      * @return string content
      */
     public String asString() {
-        return new String(data);
+        try (InputStream in = openContent()) {
+            return new String(in.readAllBytes());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
     }
 
     /**
@@ -67,15 +280,129 @@ public class Blob implements GitletObject {
     }
 
     /**
-     * Save the blob to a file.
+     * Save the blob to a file, creating its directory if needed. The content
+     * is copied in chunks.
      *
      * @param f file to save the blob to
      */
     public void saveAs(File f) {
-        Utils.writeContents(f, (Object) data);
+        File parent = f.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        if (data != null) {
+            Utils.writeContents(f, (Object) data);
+            return;
+        }
+        if (f.equals(source)) {
+            return;
+        }
+        try (InputStream in = openContent();
+             OutputStream out = Files.newOutputStream(f.toPath())) {
+            in.transferTo(out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Stores the blob as a delta against the specified base if that saves at
+     * least half of the space, and as its content otherwise. Nothing is done
+     * if the blob is already stored, so a stored blob never turns into a delta
+     * and the chains of deltas using it as their base never grow.
+     *
+     * @param base SHA-1 value of the base, usually the previous version of
+     *             the same file, or null
+     * @return SHA-1 value of the blob
+     */
+    public String store(String base) {
+        if (base == null || base.equals(sha1) || GitletObject.exists(sha1)
+                || (data == null && (source == null || source.length() > MAX_DELTA_SIZE))) {
+            return store();
+        }
+        int depth = depthOf(base) + 1;
+        byte[] baseContent = depth <= MAX_DEPTH ? contentOf(base, MAX_DELTA_SIZE) : null;
+        if (baseContent == null) {
+            return store();
+        }
+        byte[] content = data != null ? data : Utils.readContents(source);
+        if (!Utils.sha1((Object) content).equals(sha1)) {
+            Utils.exit("File %s changed while being added.", source);
+        }
+        byte[] delta = Delta.encode(baseContent, content);
+        if (delta.length >= content.length / 2) {
+            return store();
+        }
+        try (OutputStream out = GitletObject.create(sha1, TYPE_DELTA)) {
+            out.write(Utils.fromHex(base));
+            out.write(depth);
+            out.write(delta);
+        } catch (IOException excp) {
+            GitletObject.getTempPath(sha1).delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        GitletObject.install(sha1);
+        return sha1;
+    }
+
+    /**
+     * Stores the blob as its header followed by its content. The content
+     * is streamed into a temporary file and hashed once more on the way, so
+     * that a file modified since the blob was created is never stored under
+     * a wrong name.
+     *
+     * @return SHA-1 value of the blob
+     */
+    @Override
+    public String store() {
+        if (GitletObject.exists(sha1)) {
+            return sha1;
+        }
+        MessageDigest md = Utils.sha1Digest();
+        try (InputStream in = openContent();
+             OutputStream out = GitletObject.create(sha1, TYPE_BLOB)) {
+            byte[] chunk = new byte[CHUNK_SIZE];
+            int n;
+            while ((n = in.read(chunk)) >= 0) {
+                md.update(chunk, 0, n);
+                out.write(chunk, 0, n);
+            }
+        } catch (IOException excp) {
+            GitletObject.getTempPath(sha1).delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (!Utils.toHex(md.digest()).equals(sha1)) {
+            GitletObject.getTempPath(sha1).delete();
+            Utils.exit("File %s changed while being added.", source);
+        }
+        GitletObject.install(sha1);
+        return sha1;
     }
 
     public String sha1() {
-        return Utils.sha1((Object) data);
+        if (sha1 == null) {
+            sha1 = Utils.sha1((Object) data);
+        }
+        return sha1;
+    }
+
+    /**
+     * Remembers the SHA-1 value of a blob just read from the object store.
+     *
+     * @param s name of the blob in the object store
+     */
+    void identify(String s) {
+        sha1 = s;
+    }
+
+    /**
+     * Estimates the size of this blob, which only counts if its content
+     * is held in memory.
+     *
+     * @return estimated size in bytes
+     */
+    @Override
+    public long footprint() {
+        return 128 + (data == null ? 0 : data.length);
     }
 }
@@ -4,6 +4,8 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * Used to test functionality of {@link Blob}.
@@ -27,4 +29,35 @@ public class BlobTest {
         Blob c = new Blob(g);
         Assert.assertEquals(b.sha1(), c.sha1());
     }
+
+    /**
+     * Check whether blobs serialized by earlier versions, with and without
+     * a header, are read as their content, and rewritten as plain blobs by
+     * recompressing them.
+     */
+    @Test
+    public void testLegacyRecompress() throws IOException {
+        for (boolean headerless : new boolean[]{false, true}) {
+            byte[] content = ("legacy blob " + headerless).getBytes();
+            String s = Utils.sha1((Object) content);
+            byte[] serialized = Utils.serialize(new Blob(content));
+            GitletObject.delete(s);
+            if (headerless) {
+                GitletObject.getPath(s).getParentFile().mkdirs();
+                Utils.writeContents(GitletObject.getPath(s), (Object) serialized);
+            } else {
+                GitletObject.store(s, GitletObject.TYPE_SERIALIZED, serialized);
+            }
+            Assert.assertArrayEquals(content, Blob.contentOf(s, Integer.MAX_VALUE));
+
+            GitletObject.recompress(s, Codec.DEFLATE);
+            ObjectCache.clear();
+            try (InputStream in = GitletObject.open(s)) {
+                byte[] header = in.readNBytes(GitletObject.HEADER_LENGTH);
+                Assert.assertEquals(GitletObject.TYPE_BLOB, header[2]);
+            }
+            Assert.assertArrayEquals(content, Blob.contentOf(s, Integer.MAX_VALUE));
+            Assert.assertTrue(GitletObject.verify(s));
+        }
+    }
 }
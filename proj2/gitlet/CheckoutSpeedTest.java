@@ -0,0 +1,98 @@
+package gitlet;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Performs a timing test of how checking out and hashing a large tree
+ * scales with the number of worker threads, see {@link Workers}.
+ * <p>
+ * Usage: {@code java gitlet.CheckoutSpeedTest [FILES] [SIZE] [THREADS...]},
+ * run in an empty directory. It commits FILES random files of SIZE bytes in
+ * a fresh .gitlet directory. Then, for each number of THREADS, it deletes
+ * the files and times a reset that writes all of them back, and times a
+ * status that hashes all of them with an empty {@link StatCache}.
+ *
+ * @author Fei Pan
+ */
+public class CheckoutSpeedTest {
+    /**
+     * Runs the timing test. ARGS may give the number of files, their size
+     * and the numbers of threads to try.
+     */
+    public static void main(String[] args) {
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 4096;
+        int[] threads = {1, 2, 4, 8};
+        if (args.length > 2) {
+            threads = new int[args.length - 2];
+            for (int i = 2; i < args.length; i += 1) {
+                threads[i - 2] = Integer.parseInt(args[i]);
+            }
+        }
+        if (Repository.GITLET_DIR.exists()) {
+            Utils.exit("Run this in a directory without a .gitlet directory.");
+        }
+        Repository.init();
+        String tree = buildTree(files, size);
+
+        PrintStream out = System.out;
+        System.out.printf("Tree of %d files of %d bytes, %d processors.%n",
+                files, size, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-8s %12s %12s%n", "threads", "reset (s)", "status (s)");
+        for (int n : threads) {
+            Config.set("threads", Integer.toString(n));
+            for (String s : Utils.plainFilenamesIn(Repository.CWD)) {
+                new File(s).delete();
+            }
+            long start = System.nanoTime();
+            Repository.reset(tree);
+            double resetTime = seconds(start);
+
+            StatCache.save();
+            StatCache.STAT_FILE.delete();
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            start = System.nanoTime();
+            Repository.status();
+            double statusTime = seconds(start);
+            System.setOut(out);
+            StatCache.save();
+
+            System.out.printf("%-8d %12.3f %12.3f%n", n, resetTime, statusTime);
+        }
+    }
+
+    /**
+     * Returns seconds elapsed since START, as given by System.nanoTime.
+     */
+    private static double seconds(long start) {
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    /**
+     * Stores FILES random blobs of SIZE bytes and a commit on the current
+     * branch tracking them, and returns the SHA-1 value of the commit.
+     */
+    private static String buildTree(int files, int size) {
+        Random random = new Random(0);
+        Commit head = (Commit) GitletObject.read(
+                Repository.getBranch(Repository.getRef("HEAD")));
+        HashMap<File, String> tracked = new HashMap<>();
+        byte[] data = new byte[size];
+        for (int i = 0; i < files; i += 1) {
+            random.nextBytes(data);
+            tracked.put(new File("file" + i + ".txt"), new Blob(data.clone()).store());
+        }
+        Commit commit = new Commit("tree of " + files + " files", new Date(),
+                tracked, new String[]{head.sha1()});
+        String s = commit.store();
+        CommitIndex.record(commit);
+        CommitGraph.record(commit);
+        Repository.setBranch(Repository.getRef("HEAD"), s);
+        return s;
+    }
+}
@@ -0,0 +1,36 @@
+package gitlet;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Thin client of a {@link Daemon}: forwards its arguments to the daemon of
+ * the repository in the working directory and prints what the command
+ * printed, exiting with the same status. Without a running daemon, the
+ * command is run in this process as by {@link Main}.
+ * <p>
+ * Usage: java gitlet.Client ARGS, where ARGS are as for {@link Main}.
+ *
+ * @author Fei Pan
+ */
+public class Client {
+    /**
+     * Runs the command given by ARGS through the daemon if there is one.
+     */
+    public static void main(String[] args) {
+        SocketChannel channel = Daemon.connect();
+        if (channel == null) {
+            Main.main(args);
+            return;
+        }
+        int status;
+        try (channel) {
+            status = Daemon.forward(channel, args, System.out, System.err);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+}
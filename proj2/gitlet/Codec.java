@@ -0,0 +1,127 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The compression methods of stored objects. The method of an object is
+ * named by the last byte of its header, see {@link GitletObject}.
+ *
+ * @author Fei Pan
+ */
+public enum Codec {
+    /**
+     * Payload is stored as it is.
+     */
+    NONE(0),
+    /**
+     * Payload is compressed with deflate.
+     */
+    DEFLATE(1);
+
+    /**
+     * The byte naming the codec in object headers.
+     */
+    final byte id;
+
+    Codec(int id) {
+        this.id = (byte) id;
+    }
+
+    /**
+     * Returns the codec with the specified id.
+     *
+     * @param id byte naming the codec
+     * @return the codec
+     */
+    static Codec of(byte id) {
+        for (Codec codec : values()) {
+            if (codec.id == id) {
+                return codec;
+            }
+        }
+        throw Utils.error("Unknown codec %d.", id);
+    }
+
+    /**
+     * Returns the codec with the specified name, as used in the
+     * configuration, or null if there is no such codec.
+     *
+     * @param name name of the codec, such as "deflate"
+     * @return the codec, or null
+     */
+    static Codec named(String name) {
+        for (Codec codec : values()) {
+            if (codec.name().equalsIgnoreCase(name)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the codec new objects are stored with, which is set by the
+     * {@code compression} key of the configuration and defaults to deflate.
+     *
+     * @return the codec for new objects
+     */
+    static Codec current() {
+        Codec codec = named(Config.get("compression", "deflate"));
+        return codec == null ? DEFLATE : codec;
+    }
+
+    /**
+     * Wraps a stream so that what is written to it is encoded.
+     * Closing the returned stream closes the wrapped one.
+     *
+     * @param out stream to write encoded bytes to
+     * @return a stream to write plain bytes to
+     */
+    OutputStream encode(OutputStream out) {
+        if (this == DEFLATE) {
+            return new DeflaterOutputStream(out);
+        }
+        return out;
+    }
+
+    /**
+     * Wraps a stream so that what is read from it is decoded.
+     * Closing the returned stream closes the wrapped one.
+     *
+     * @param in stream to read encoded bytes from
+     * @return a stream to read plain bytes from
+     */
+    InputStream decode(InputStream in) {
+        if (this == DEFLATE) {
+            return new InflaterInputStream(in);
+        }
+        return in;
+    }
+
+    /**
+     * Reads the rest of a stream and decodes it. The decoder is released
+     * and the stream closed afterwards.
+     *
+     * @param in stream to read encoded bytes from
+     * @return the plain bytes
+     * @throws IOException if the stream cannot be read
+     */
+    byte[] decodeAll(InputStream in) throws IOException {
+        try (InputStream decoded = decode(in)) {
+            return decoded.readAllBytes();
+        }
+    }
+
+    /**
+     * Returns the name of the codec as used in the configuration.
+     *
+     * @return name of the codec
+     */
+    @Override
+    public String toString() {
+        return name().toLowerCase();
+    }
+}
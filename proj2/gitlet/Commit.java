@@ -1,38 +1,93 @@
 package gitlet;
 
-import java.text.SimpleDateFormat;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.io.File;
 
 /**
  * Represents a gitlet commit object.<br>
  * A Commit object stores message, timestamp, changes and parent commits of a commit.
+ * Commits are immutable, so their SHA-1 value is computed at most once.
+ * <p>
+ * Commits are stored in a binary format rather than Java serialization.
+ * The payload is a format version byte, the timestamp in milliseconds as an
+ * 8-byte integer, the number of parents in one byte followed by their 20-byte
+ * SHA-1 values, the message, and the 20-byte SHA-1 value of the root
+ * {@link Tree} of the tracked files. Strings are written as their length and
+ * their UTF-8 bytes. Since the encoding of a commit is unique, the SHA-1
+ * value of a commit is that of its payload. Commits stored by earlier
+ * versions keep their names; those of format version 1 list the tracked
+ * files instead of the root tree, as the number of files as a 4-byte integer
+ * followed by their paths and 20-byte SHA-1 values, sorted by path.
+ * <p>
+ * A commit read in the current format only knows its root tree. Single
+ * files are looked up along their paths, and the map of all tracked files
+ * is built the first time it is asked for.
  *
  * @author Fei Pan
  */
 public class Commit implements GitletObject {
+    /**
+     * Fixed so that objects stored by earlier versions can still be read.
+     */
+    private static final long serialVersionUID = 8469538321781003976L;
+    /**
+     * Version of the binary format written by {@link Commit#encode()}.
+     */
+    static final int FORMAT_VERSION = 2;
+    /**
+     * Version of the binary format that lists the tracked files.
+     */
+    static final int FLAT_FORMAT_VERSION = 1;
+    /**
+     * Format of the dates shown by {@link Commit#show()}, which is
+     * immutable and can be shared by all threads.
+     */
+    static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("EEE MMM dd HH:mm:ss yyyy Z")
+                    .withZone(ZoneId.systemDefault());
 
     /**
      * The message of this Commit.
      */
-    private String message;
+    private final String message;
     /**
      * The timestamp of this Commit
      */
-    private Date date;
+    private final Date date;
     /**
      * The tracked files contained in this Commit.
      * <p>
      * {@code key}: File that was modified<br>
      * {@code value}: SHA-1 value of blob that stores the content of the file.
      * </p>
+     * Null until it is first asked for if the commit was read with a root tree.
      */
-    private HashMap<File, String> tracked;
+    private volatile HashMap<File, String> tracked;
+    /**
+     * The SHA-1 value of the root tree of this Commit, or null if the
+     * trees of its tracked files have not been stored yet.
+     */
+    private String tree;
     /**
      * The parents of this Commit,
      * which are represented by their SHA-1 values.
      */
-    private String[] parents;
+    private final String[] parents;
+    /**
+     * The SHA-1 value of this Commit, or null if it has not been
+     * computed yet. Not part of the serialized form.
+     */
+    private transient String sha1;
 
     /**
      * Creates an initial commit.
@@ -61,8 +116,126 @@ public class Commit implements GitletObject {
         this.parents = parents;
     }
 
+    /**
+     * Creates a Commit whose tracked files are given by a stored tree.
+     *
+     * @param message message
+     * @param date    date
+     * @param tree    SHA-1 value of the root tree
+     * @param parents SHA-1 values of the parents
+     */
+    private Commit(String message, Date date, String tree, String[] parents) {
+        this.message = message;
+        this.date = date;
+        this.tree = tree;
+        this.parents = parents;
+    }
+
+    /**
+     * Returns SHA-1 value of this commit. It is computed on the first call
+     * unless the commit was read from the object store, in which case its
+     * name is used.
+     *
+     * @return SHA-1 value of the commit
+     */
     public String sha1() {
-        return Utils.sha1((Object) Utils.serialize(this));
+        if (sha1 == null) {
+            sha1 = Utils.sha1((Object) encode());
+        }
+        return sha1;
+    }
+
+    /**
+     * Stores the commit in the binary format, after storing the trees of
+     * its tracked files.
+     *
+     * @return SHA-1 value of the commit
+     */
+    @Override
+    public String store() {
+        getTree();
+        byte[] payload = encode();
+        if (sha1 == null) {
+            sha1 = Utils.sha1((Object) payload);
+        }
+        return GitletObject.store(sha1, TYPE_COMMIT, payload);
+    }
+
+    /**
+     * Returns the binary encoding of this commit, see {@link Commit}.
+     *
+     * @return the payload of the commit
+     */
+    byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            out.writeLong(date.getTime());
+            out.writeByte(parents.length);
+            for (String parent : parents) {
+                Utils.writeSha1(out, parent);
+            }
+            Utils.writeString(out, message);
+            Utils.writeSha1(out, tree != null ? tree : Tree.build(tracked, false));
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding commit.");
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Returns the commit encoded in the specified payload.
+     *
+     * @param payload the payload of a commit, see {@link Commit#encode()}
+     * @return the commit
+     */
+    static Commit decode(byte[] payload) {
+        ByteBuffer in = ByteBuffer.wrap(payload);
+        int version = in.get();
+        if (version != FORMAT_VERSION && version != FLAT_FORMAT_VERSION) {
+            throw Utils.error("Unknown commit format version %d.", version);
+        }
+        Date date = new Date(in.getLong());
+        String[] parents = new String[in.get()];
+        for (int i = 0; i < parents.length; i += 1) {
+            parents[i] = Utils.readSha1(in);
+        }
+        String message = Utils.readString(in);
+        if (version == FORMAT_VERSION) {
+            return new Commit(message, date, Utils.readSha1(in), parents);
+        }
+        int n = in.getInt();
+        HashMap<File, String> tracked = new HashMap<>(n * 4 / 3 + 1);
+        for (int i = 0; i < n; i += 1) {
+            File f = new File(Utils.readString(in));
+            tracked.put(f, Utils.readSha1(in));
+        }
+        return new Commit(message, date, tracked, parents);
+    }
+
+    /**
+     * Remembers the SHA-1 value of a commit just read from the object store.
+     *
+     * @param s name of the commit in the object store
+     */
+    void identify(String s) {
+        sha1 = s;
+    }
+
+    /**
+     * Estimates the size of this commit from the lengths of its message
+     * and of the paths it tracks.
+     *
+     * @return estimated size in bytes
+     */
+    @Override
+    public long footprint() {
+        long result = 256 + 2L * message.length() + 64L * parents.length;
+        Map<File, String> files = tracked;
+        for (File f : files == null ? Set.<File>of() : files.keySet()) {
+            result += 192 + 2L * f.getPath().length();
+        }
+        return result;
     }
 
     /**
@@ -101,26 +274,89 @@ public class Commit implements GitletObject {
      * Show information of this commit in a certain format.
      */
     public void show() {
-        Utils.message("===");
-        Utils.message("commit %s", sha1());
+        StringBuilder out = new StringBuilder();
+        show(out);
+        Utils.flush(out, true);
+    }
+
+    /**
+     * Appends information of this commit in the format of
+     * {@link Commit#show()} to the specified buffer.
+     *
+     * @param out buffer to append to
+     */
+    void show(StringBuilder out) {
+        show(out, sha1(), parents, date.getTime(), message);
+    }
+
+    /**
+     * Appends information of a commit in the format of {@link Commit#show()}
+     * to the specified buffer.
+     *
+     * @param out       buffer to append to
+     * @param id        SHA-1 value of the commit
+     * @param parents   SHA-1 values of the parents of the commit
+     * @param timestamp date of the commit in milliseconds
+     * @param message   message of the commit
+     */
+    static void show(StringBuilder out, String id, String[] parents,
+                     long timestamp, String message) {
+        String newline = System.lineSeparator();
+        out.append("===").append(newline);
+        out.append("commit ").append(id).append(newline);
         if (parents.length == 2) {
-            Utils.message("Merge: %s %s", parents[0].substring(0, 7), parents[1].substring(0, 7));
+            out.append("Merge: ").append(parents[0], 0, 7).append(' ')
+                    .append(parents[1], 0, 7).append(newline);
         }
-        SimpleDateFormat formatter = new SimpleDateFormat("EEE MMM dd HH:mm:ss yyyy Z");
-        Utils.message("Date: %s", formatter.format(date));
-        Utils.message(message);
-        Utils.message("");
+        out.append("Date: ");
+        DATE_FORMAT.formatTo(Instant.ofEpochMilli(timestamp), out);
+        out.append(newline).append(message).append(newline).append(newline);
+    }
+
+    /**
+     * Appends a commit to the specified buffer in one line, as its
+     * abbreviated SHA-1 value followed by the first line of its message.
+     *
+     * @param out     buffer to append to
+     * @param id      SHA-1 value of the commit
+     * @param message message of the commit
+     */
+    static void showOneline(StringBuilder out, String id, String message) {
+        int end = message.indexOf('\n');
+        out.append(id, 0, 7).append(' ')
+                .append(message, 0, end < 0 ? message.length() : end)
+                .append(System.lineSeparator());
     }
 
     /**
-     * Append a new parent to the commit.
+     * Returns the message of the stored commit with SHA-1 value s. For a
+     * commit in the binary format, only the part of the payload up to the
+     * message is read, so the tracked files are never decoded.
      *
-     * @param parent parent to append
+     * @param s SHA-1 value of the commit
+     * @return message of the commit
      */
-    public void addParent(String parent) {
-        List<String> list = new ArrayList<>(List.of(this.parents));
-        list.add(parent);
-        this.parents = list.toArray(new String[0]);
+    static String messageOf(String s) {
+        try (InputStream stored = GitletObject.open(s)) {
+            byte[] header = stored.readNBytes(HEADER_LENGTH);
+            if (!GitletObject.hasHeader(header) || header[2] != TYPE_COMMIT) {
+                return ((Commit) GitletObject.read(s)).message;
+            }
+            try (DataInputStream in = new DataInputStream(
+                    Codec.of(header[3]).decode(stored))) {
+                int version = in.readByte();
+                if (version != FORMAT_VERSION && version != FLAT_FORMAT_VERSION) {
+                    throw Utils.error("Unknown commit format version %d.", version);
+                }
+                in.skipNBytes(8);
+                in.skipNBytes(in.readByte() * (long) (Utils.UID_LENGTH / 2));
+                byte[] b = new byte[in.readInt()];
+                in.readFully(b);
+                return new String(b, StandardCharsets.UTF_8);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
     }
 
     public String[] getParents() {
@@ -131,8 +367,52 @@ public class Commit implements GitletObject {
         return message;
     }
 
-    public HashMap<File, String> getTracked() {
-        return tracked;
+    public Date getDate() {
+        return date;
+    }
+
+    /**
+     * Returns all tracked files, which are read from the trees of this
+     * commit on the first call. The commit grows by them, so its size is
+     * accounted again if it is cached, see {@link ObjectCache}.
+     *
+     * @return SHA-1 values of blobs by path
+     */
+    public Map<File, String> getTracked() {
+        HashMap<File, String> result = tracked;
+        if (result == null) {
+            result = new HashMap<>();
+            Tree.flatten(tree, null, result);
+            tracked = result;
+            if (sha1 != null) {
+                ObjectCache.resize(sha1, this);
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Returns the SHA-1 value of the root tree of this commit. The trees of
+     * a commit created from a map of tracked files are stored on the first
+     * call.
+     *
+     * @return SHA-1 value of the root tree
+     */
+    String getTree() {
+        if (tree == null) {
+            tree = Tree.build(tracked, true);
+        }
+        return tree;
+    }
+
+    /**
+     * Returns whether the trees of this commit are stored, so that they can
+     * be compared with those of another commit.
+     *
+     * @return true if the commit has a stored root tree
+     */
+    boolean hasTree() {
+        return tree != null;
     }
 
     /**
@@ -156,16 +436,30 @@ public class Commit implements GitletObject {
      * @return the derived commit
      */
     public Commit nextCommit(String msg, Staged stagingArea) {
-        Commit commit = new Commit(msg, new Date(), this.tracked, new String[]{this.sha1()});
-        for (Map.Entry<File, String> change : stagingArea.getChanges().entrySet()) {
-            if (change.getValue() == null) {
-                commit.tracked.remove(change.getKey());
-            } else {
-                commit.tracked.put(change.getKey(), change.getValue());
-            }
-        }
+        return nextCommit(msg, stagingArea, null);
+    }
+
+    /**
+     * Creates a commit from current commit with the specified staging area.
+     * If mergedParent is not null, it becomes the second parent of the new
+     * commit. The staging area will be cleared afterward.
+     * <p>
+     * Only the trees of directories containing staged files are written,
+     * see {@link Tree#update(String, Map, boolean)}; the new commit shares
+     * all other trees with this one.
+     *
+     * @param msg          message for the new commit
+     * @param stagingArea  staging area to derived commit from
+     * @param mergedParent SHA-1 value of the second parent, or null
+     * @return the derived commit
+     */
+    public Commit nextCommit(String msg, Staged stagingArea, String mergedParent) {
+        String nextTree = Tree.update(getTree(), stagingArea.getChanges(), true);
+        String[] nextParents = mergedParent == null
+                ? new String[]{this.sha1()}
+                : new String[]{this.sha1(), mergedParent};
         stagingArea.clear();
-        return commit;
+        return new Commit(msg, new Date(), nextTree, nextParents);
     }
 
     /**
@@ -176,7 +470,8 @@ public class Commit implements GitletObject {
      * @return SHA-1 value, or null
      */
     public String getFile(File f) {
-        return tracked.get(f);
+        Map<File, String> files = tracked;
+        return files != null ? files.get(f) : Tree.lookup(tree, f);
     }
 
     /**
@@ -186,58 +481,39 @@ public class Commit implements GitletObject {
      * @return true if the file is tracked
      */
     public Boolean hasFile(File f) {
-        return tracked.containsKey(f);
-    }
-
-    /**
-     * A helper method based on DFS that adds all ancestor commits including
-     * self to a specified set.
-     *
-     * @param commit    commit who and whose ancestors to be added
-     * @param ancestors set to add to
-     */
-    private static void addToAncestors(Commit commit, Set<Commit> ancestors) {
-        if (ancestors.contains(commit)) {
-            return;
-        }
-        ancestors.add(commit);
-        for (String next : commit.parents) {
-            addToAncestors((Commit) GitletObject.read(next), ancestors);
-        }
+        return getFile(f) != null;
     }
 
     /**
      * Returns a set contains all ancestors and self of the specified commit.
+     * The ancestors are found in the commit graph, see {@link CommitGraph},
+     * and only they are read.
      *
      * @param commit commit to get ancestors
      * @return a set of ancestors and self
      */
     public static Set<Commit> ancestors(Commit commit) {
         HashSet<Commit> result = new HashSet<>();
-        addToAncestors(commit, result);
+        BitSet positions = CommitGraph.ancestors(CommitGraph.position(commit.sha1()));
+        for (int pos = positions.nextSetBit(0); pos >= 0; pos = positions.nextSetBit(pos + 1)) {
+            result.add((Commit) GitletObject.read(CommitGraph.id(pos)));
+        }
         return result;
     }
 
     /**
      * Returns the lowest common ancestor of the
-     * specified two commmits.
+     * specified two commmits. It is found in the
+     * commit graph, so no other commit is read.
      *
      * @param a a commit
      * @param b another commit
      * @return the lowest common ancestor
+     * @see CommitGraph#mergeBase(int, int)
      */
     public static Commit lowestCommonAncestor(Commit a, Commit b) {
-        Set<Commit> common = ancestors(a);
-        common.retainAll(ancestors(b));
-
-        HashSet<Commit> copy = new HashSet<>(common);
-        for (Commit c : copy) {
-            for (String next : c.parents) {
-                common.remove((Commit) GitletObject.read(next));
-            }
-        }
-
-        assert common.size() == 1;
-        return common.iterator().next();
+        int base = CommitGraph.mergeBase(CommitGraph.position(a.sha1()),
+                CommitGraph.position(b.sha1()));
+        return (Commit) GitletObject.read(CommitGraph.id(base));
     }
 }
@@ -0,0 +1,456 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Maintains the commit graph, which describes the history of all commits
+ * in fixed-width records, so that it can be traversed without reading
+ * commits from the object store.
+ * <p>
+ * The graph is stored in {@code <Repository.GITLET_DIR>/GRAPH}. Each record
+ * consists of the 20-byte SHA-1 value of a commit, the positions of the
+ * records of its first and second parent as 4-byte integers, or -1 if there
+ * is no such parent, its generation number as a 4-byte integer and its
+ * timestamp in milliseconds as an 8-byte integer. The generation number of
+ * the initial commit is 1, and that of any other commit is one more than the
+ * largest generation number of its parents, so a commit never has a smaller
+ * generation number than any of its ancestors.
+ * <p>
+ * A commit is always recorded after its parents, and records are only ever
+ * appended. Commits missing from the graph, such as those of repositories
+ * created before it existed, are added together with their missing
+ * ancestors the first time they are looked up. Commits are looked up by
+ * SHA-1 value through a hash table of their positions, which is built once
+ * each time the graph is mapped, so a lookup takes constant time.
+ *
+ * @author Fei Pan
+ */
+public class CommitGraph {
+    /**
+     * The commit graph file.
+     */
+    static final File GRAPH = Utils.join(Repository.GITLET_DIR, "GRAPH");
+    /**
+     * Position of a parent that does not exist.
+     */
+    static final int NONE = -1;
+    /**
+     * Length of a SHA-1 value in bytes.
+     */
+    private static final int SHA1_BYTES = Utils.UID_LENGTH / 2;
+    /**
+     * Length of a record.
+     */
+    private static final int RECORD_LENGTH = SHA1_BYTES + 20;
+    /**
+     * Mark of a commit reached from the first commit by
+     * {@link CommitGraph#mergeBase(int, int)}.
+     */
+    private static final int FROM_A = 1;
+    /**
+     * Mark of a commit reached from the second commit by
+     * {@link CommitGraph#mergeBase(int, int)}.
+     */
+    private static final int FROM_B = 2;
+
+    /**
+     * The memory-mapped graph, or null if it has not been mapped yet.
+     */
+    private static ByteBuffer graph;
+    /**
+     * Positions of the commits plus one, in a hash table with open addressing
+     * keyed by the first 8 bytes of their SHA-1 values, where 0 marks an empty
+     * slot, or null if it has not been built since the graph was mapped.
+     */
+    private static int[] table;
+
+    /**
+     * Returns the memory-mapped graph, without any incomplete record left
+     * by an interrupted write. Returns an empty buffer if there is no graph.
+     *
+     * @return the graph
+     */
+    private static ByteBuffer graph() {
+        if (graph == null) {
+            if (!GRAPH.exists()) {
+                return ByteBuffer.allocate(0);
+            }
+            try (FileChannel channel = FileChannel.open(GRAPH.toPath(),
+                    StandardOpenOption.READ)) {
+                long size = channel.size() - channel.size() % RECORD_LENGTH;
+                graph = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Unmaps the graph, so that it is mapped again when next used, in case
+     * another process has added to it.
+     */
+    static void reload() {
+        graph = null;
+        table = null;
+    }
+
+    /**
+     * Returns the number of commits in the graph.
+     *
+     * @return the number of commits
+     */
+    public static int size() {
+        return graph().limit() / RECORD_LENGTH;
+    }
+
+    /**
+     * Returns the SHA-1 value of the commit at the specified position.
+     *
+     * @param pos position of the commit
+     * @return SHA-1 value of the commit
+     */
+    public static String id(int pos) {
+        byte[] b = new byte[SHA1_BYTES];
+        graph().get(pos * RECORD_LENGTH, b);
+        return Utils.toHex(b);
+    }
+
+    /**
+     * Returns the positions of the parents of the commit at the specified
+     * position, first parent first.
+     *
+     * @param pos position of the commit
+     * @return positions of the parents
+     */
+    public static int[] parents(int pos) {
+        ByteBuffer g = graph();
+        int first = g.getInt(pos * RECORD_LENGTH + SHA1_BYTES);
+        int second = g.getInt(pos * RECORD_LENGTH + SHA1_BYTES + 4);
+        if (first == NONE) {
+            return new int[0];
+        }
+        return second == NONE ? new int[]{first} : new int[]{first, second};
+    }
+
+    /**
+     * Returns the generation number of the commit at the specified position.
+     *
+     * @param pos position of the commit
+     * @return the generation number
+     */
+    public static int generation(int pos) {
+        return graph().getInt(pos * RECORD_LENGTH + SHA1_BYTES + 8);
+    }
+
+    /**
+     * Returns the timestamp in milliseconds of the commit at the specified
+     * position.
+     *
+     * @param pos position of the commit
+     * @return the timestamp
+     */
+    public static long timestamp(int pos) {
+        return graph().getLong(pos * RECORD_LENGTH + SHA1_BYTES + 12);
+    }
+
+    /**
+     * Returns the position of the specified commit, adding it to the graph
+     * if it is missing.
+     *
+     * @param s SHA-1 value of the commit
+     * @return position of the commit
+     */
+    public static int position(String s) {
+        int pos = find(s);
+        if (pos == NONE) {
+            add(List.of(s), Map.of(), GRAPH);
+            pos = find(s);
+        }
+        return pos;
+    }
+
+    /**
+     * Adds the specified commit, which has just been stored, to the graph.
+     * Its parents must be stored, but need not be in the graph.
+     *
+     * @param commit commit to record
+     */
+    public static void record(Commit commit) {
+        record(List.of(commit));
+    }
+
+    /**
+     * Adds the specified new commits to the graph at once. Each of them must
+     * be given after its parents or have stored parents, and none of them
+     * may be in the graph already, so they are never looked up in it.
+     *
+     * @param commits commits to record
+     */
+    public static void record(List<Commit> commits) {
+        List<String> ids = new ArrayList<>();
+        Map<String, Commit> known = new HashMap<>();
+        for (Commit commit : commits) {
+            ids.add(commit.sha1());
+            known.put(commit.sha1(), commit);
+        }
+        add(ids, known, GRAPH);
+    }
+
+    /**
+     * Discards the graph and rebuilds it from the commits listed in the
+     * commit catalog, see {@link CommitIndex}.
+     */
+    public static void rebuild() {
+        List<String> ids = new ArrayList<>();
+        CommitIndex.forEachCommit(ids::add);
+        reload();
+        File temp = Utils.join(Repository.GITLET_DIR, "GRAPH.tmp");
+        temp.delete();
+        add(ids, Map.of(), temp);
+        Durable.replace(temp, GRAPH);
+        reload();
+    }
+
+    /**
+     * Returns the positions of all ancestors of the commit at the specified
+     * position, including itself.
+     *
+     * @param pos position of the commit
+     * @return a set of positions
+     */
+    public static BitSet ancestors(int pos) {
+        BitSet result = new BitSet(pos + 1);
+        Deque<Integer> pending = new ArrayDeque<>();
+        pending.push(pos);
+        while (!pending.isEmpty()) {
+            int next = pending.pop();
+            if (!result.get(next)) {
+                result.set(next);
+                for (int parent : parents(next)) {
+                    pending.push(parent);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the position of the best common ancestor of the commits at the
+     * specified positions, which is a common ancestor that is not an ancestor
+     * of any other common ancestor. If there are several, the one with the
+     * largest generation number and then the latest timestamp is chosen.
+     * <p>
+     * Both commits are walked at once, always continuing from the commit with
+     * the largest generation number, and each commit reached is marked with
+     * the sides it was reached from. Since a commit has a larger generation
+     * number than its ancestors, all of its descendants that are reached at
+     * all have been walked by the time it is taken from the queue, so its
+     * marks are final. The first commit taken with both marks is therefore
+     * a common ancestor with the largest generation number, and the walk
+     * stops there. Its cost depends on how far the commits have diverged
+     * rather than on the length of the history.
+     *
+     * @param a position of a commit
+     * @param b position of another commit
+     * @return position of the best common ancestor, or NONE if there is none
+     */
+    public static int mergeBase(int a, int b) {
+        if (a == b) {
+            return a;
+        }
+        Map<Integer, Integer> marks = new HashMap<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>(CommitGraph::compareNewestFirst);
+        marks.put(a, FROM_A);
+        marks.put(b, FROM_B);
+        queue.add(a);
+        queue.add(b);
+        while (!queue.isEmpty()) {
+            int pos = queue.poll();
+            int mark = marks.get(pos);
+            if (mark == (FROM_A | FROM_B)) {
+                return pos;
+            }
+            for (int parent : parents(pos)) {
+                Integer old = marks.get(parent);
+                if (old == null) {
+                    queue.add(parent);
+                    marks.put(parent, mark);
+                } else {
+                    marks.put(parent, old | mark);
+                }
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Orders positions of commits by decreasing generation number, then by
+     * decreasing timestamp, then by decreasing position.
+     */
+    private static int compareNewestFirst(int x, int y) {
+        int cmp = Integer.compare(generation(y), generation(x));
+        if (cmp == 0) {
+            cmp = Long.compare(timestamp(y), timestamp(x));
+        }
+        return cmp != 0 ? cmp : Integer.compare(y, x);
+    }
+
+    /**
+     * Returns the hash table of the positions of the commits, building it
+     * if needed, see {@link CommitGraph#table}. It has at least twice as many
+     * slots as there are commits, so probe sequences stay short.
+     */
+    private static int[] table() {
+        if (table == null) {
+            ByteBuffer g = graph();
+            int n = size();
+            int[] result = new int[Integer.highestOneBit(Math.max(2, 2 * n)) << 1];
+            int mask = result.length - 1;
+            for (int pos = n - 1; pos >= 0; pos -= 1) {
+                int slot = (int) g.getLong(pos * RECORD_LENGTH) & mask;
+                while (result[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                result[slot] = pos + 1;
+            }
+            table = result;
+        }
+        return table;
+    }
+
+    /**
+     * Returns the position of the specified commit, or NONE if it is not in
+     * the graph. It is looked up in the hash table of positions.
+     *
+     * @param s SHA-1 value of the commit
+     * @return position of the commit, or NONE
+     */
+    private static int find(String s) {
+        ByteBuffer g = graph();
+        int[] t = table();
+        int mask = t.length - 1;
+        byte[] key = Utils.fromHex(s), entry = new byte[SHA1_BYTES];
+        long prefix = ByteBuffer.wrap(key).getLong();
+        for (int slot = (int) prefix & mask; t[slot] != 0; slot = (slot + 1) & mask) {
+            int pos = t[slot] - 1;
+            if (g.getLong(pos * RECORD_LENGTH) == prefix) {
+                g.get(pos * RECORD_LENGTH, entry);
+                if (Arrays.equals(entry, key)) {
+                    return pos;
+                }
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Appends records of the specified commits and their ancestors missing
+     * from the graph to the specified file, which is the graph file or
+     * an empty file that is to replace it. Ancestors are visited without
+     * recursion, so that long histories do not overflow the stack.
+     *
+     * @param ids   SHA-1 values of the commits
+     * @param known new commits among them, which are neither read nor looked
+     *              up in the graph, by their SHA-1 values
+     * @param file  file to append to
+     */
+    private static void add(List<String> ids, Map<String, Commit> known, File file) {
+        boolean extend = file.equals(GRAPH);
+        int base = extend ? size() : 0;
+        Map<String, Integer> added = new HashMap<>();
+        List<Integer> generations = new ArrayList<>();
+        ByteBuffer records = ByteBuffer.allocate(0);
+
+        Deque<String> pending = new ArrayDeque<>();
+        for (String id : ids) {
+            pending.push(id);
+            while (!pending.isEmpty()) {
+                String s = pending.peek();
+                Commit commit = known.get(s);
+                if (added.containsKey(s) || (commit == null && extend && find(s) != NONE)) {
+                    pending.pop();
+                    continue;
+                }
+                if (commit == null) {
+                    commit = (Commit) GitletObject.read(s);
+                }
+                if (commit == null) {
+                    throw Utils.error("Commit %s does not exist.", s);
+                }
+                String[] parents = commit.getParents();
+                int[] positions = {NONE, NONE};
+                int generation = 1;
+                boolean ready = true;
+                for (int i = 0; i < parents.length; i += 1) {
+                    Integer pos = added.get(parents[i]);
+                    if (pos == null && extend) {
+                        pos = find(parents[i]);
+                    }
+                    if (pos == null || pos == NONE) {
+                        pending.push(parents[i]);
+                        ready = false;
+                        continue;
+                    }
+                    positions[i] = pos;
+                    int parentGeneration = pos < base
+                            ? generation(pos) : generations.get(pos - base);
+                    generation = Math.max(generation, parentGeneration + 1);
+                }
+                if (!ready) {
+                    continue;
+                }
+                pending.pop();
+                if (!records.hasRemaining()) {
+                    records = grow(records);
+                }
+                records.put(Utils.fromHex(s)).putInt(positions[0]).putInt(positions[1])
+                        .putInt(generation).putLong(commit.getDate().getTime());
+                added.put(s, base + generations.size());
+                generations.add(generation);
+            }
+        }
+        append(file, records.flip());
+    }
+
+    /**
+     * Returns a buffer twice the capacity of B, at least one record long,
+     * holding the records written to B.
+     */
+    private static ByteBuffer grow(ByteBuffer b) {
+        ByteBuffer result = ByteBuffer.allocate(Math.max(RECORD_LENGTH, 2 * b.capacity()));
+        return result.put(b.flip());
+    }
+
+    /**
+     * Appends the remaining bytes of RECORDS to FILE, after dropping any
+     * incomplete record at its end.
+     */
+    private static void append(File file, ByteBuffer records) {
+        try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+            out.truncate(out.size() - out.size() % RECORD_LENGTH);
+            out.position(out.size());
+            while (records.hasRemaining()) {
+                out.write(records);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Durable.written(file);
+        reload();
+    }
+}
@@ -0,0 +1,124 @@
+package gitlet;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Used to test functionality of {@link CommitGraph}.
+ *
+ * @author Fei Pan
+ */
+public class CommitGraphTest {
+    /**
+     * Length of the long histories tested.
+     */
+    private static final int LENGTH = 100000;
+
+    /**
+     * Creates the directory the commit graph is stored in.
+     */
+    @BeforeClass
+    public static void setUp() {
+        Repository.GITLET_DIR.mkdirs();
+    }
+
+    /**
+     * Returns a chain of N new commits with messages starting with NAME,
+     * the first of which has PARENT as its parent unless it is null, after
+     * recording them in the commit graph. They are not stored.
+     */
+    private static List<Commit> chain(Commit parent, String name, int n) {
+        List<Commit> result = new ArrayList<>();
+        for (int i = 0; i < n; i += 1) {
+            String[] parents = parent == null ? new String[0] : new String[]{parent.sha1()};
+            parent = new Commit(name + i, new Date(i), new HashMap<>(), parents);
+            result.add(parent);
+        }
+        CommitGraph.record(result);
+        return result;
+    }
+
+    /**
+     * Returns the last element of L.
+     */
+    private static Commit last(List<Commit> l) {
+        return l.get(l.size() - 1);
+    }
+
+    /**
+     * Returns the position of commit C in the commit graph.
+     */
+    private static int pos(Commit c) {
+        return CommitGraph.position(c.sha1());
+    }
+
+    /**
+     * Check whether the merge base of two short branches off a long
+     * history, and of commits on the same line, is found.
+     */
+    @Test
+    public void testShortDivergence() {
+        List<Commit> history = chain(null, "short history ", LENGTH);
+        Commit tip = last(history);
+        Commit a = last(chain(tip, "short a ", 5)), b = last(chain(tip, "short b ", 5));
+
+        Assert.assertEquals(tip.sha1(), CommitGraph.id(CommitGraph.mergeBase(pos(a), pos(b))));
+        Assert.assertEquals(pos(history.get(LENGTH / 2)),
+                CommitGraph.mergeBase(pos(a), pos(history.get(LENGTH / 2))));
+        Assert.assertEquals(pos(a), CommitGraph.mergeBase(pos(a), pos(a)));
+        Assert.assertEquals(LENGTH + 5, CommitGraph.generation(pos(a)));
+        Assert.assertEquals(LENGTH + 5, CommitGraph.ancestors(pos(a)).cardinality());
+    }
+
+    /**
+     * Check whether the merge base of two long branches that diverged
+     * at the initial commit is found.
+     */
+    @Test
+    public void testLongDivergence() {
+        Commit root = last(chain(null, "long root ", 1));
+        Commit a = last(chain(root, "long a ", LENGTH / 2));
+        Commit b = last(chain(root, "long b ", LENGTH / 2));
+        Assert.assertEquals(root.sha1(), CommitGraph.id(CommitGraph.mergeBase(pos(a), pos(b))));
+    }
+
+    /**
+     * Check whether the latest of two best common ancestors is chosen
+     * when two branches were merged into each other.
+     */
+    @Test
+    public void testCrissCross() {
+        Commit root = last(chain(null, "criss-cross root ", 1));
+        Commit a = new Commit("criss-cross a", new Date(10), new HashMap<>(),
+                new String[]{root.sha1()});
+        Commit b = new Commit("criss-cross b", new Date(20), new HashMap<>(),
+                new String[]{root.sha1()});
+        Commit x = new Commit("criss-cross x", new Date(30), new HashMap<>(),
+                new String[]{a.sha1(), b.sha1()});
+        Commit y = new Commit("criss-cross y", new Date(30), new HashMap<>(),
+                new String[]{b.sha1(), a.sha1()});
+        CommitGraph.record(List.of(a, b, x, y));
+        Assert.assertEquals(b.sha1(), CommitGraph.id(CommitGraph.mergeBase(pos(x), pos(y))));
+    }
+
+    /**
+     * Check whether every commit of a long history is found at the position
+     * of its record, as looked up in the hash table of positions.
+     */
+    @Test
+    public void testLookup() {
+        List<Commit> history = chain(null, "lookup ", LENGTH);
+        int first = pos(history.get(0));
+        for (int i = 0; i < LENGTH; i += 1) {
+            Commit c = history.get(i);
+            Assert.assertEquals(first + i, pos(c));
+            Assert.assertEquals(c.sha1(), CommitGraph.id(first + i));
+        }
+    }
+}
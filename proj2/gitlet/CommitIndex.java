@@ -0,0 +1,222 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Maintains on-disk indexes of commits so that commands like {@code find}
+ * do not have to read every object in the repository.
+ * <p>
+ * The message index is stored in {@code <Repository.GITLET_DIR>/MESSAGES}.
+ * Each line of it is a record of the form {@code <SHA-1> <message>}, where
+ * backslashes and line breaks in the message are escaped. Records are only
+ * ever appended, so updating the index costs the same no matter how large
+ * the repository is.
+ * <p>
+ * The commit catalog is stored in {@code <Repository.GITLET_DIR>/COMMITS}
+ * and lists the SHA-1 value of every commit, one per line, so that commits
+ * can be enumerated without reading blobs.
+ * <p>
+ * Both files are marked as written for {@link Durable} after each append. A
+ * crash in the middle of an append may leave a last line without its line
+ * break, which is dropped before the next append, so that records are never
+ * glued together.
+ *
+ * @author Fei Pan
+ */
+public class CommitIndex {
+    /**
+     * The message index file.
+     */
+    static final File MESSAGES = Utils.join(Repository.GITLET_DIR, "MESSAGES");
+    /**
+     * The commit catalog file.
+     */
+    static final File COMMITS = Utils.join(Repository.GITLET_DIR, "COMMITS");
+
+    /**
+     * Records the specified commit in the indexes. Should be called
+     * exactly once for every commit that is stored.
+     *
+     * @param commit commit to record
+     */
+    public static void record(Commit commit) {
+        if (!MESSAGES.exists() || !COMMITS.exists()) {
+            rebuild();
+            return;
+        }
+        append(List.of(commit));
+    }
+
+    /**
+     * Returns SHA-1 values of all commits with the specified message,
+     * in the order they were recorded.
+     *
+     * @param message message to look for
+     * @return a list of SHA-1 values, empty if no commit matches
+     */
+    public static List<String> find(String message) {
+        if (!MESSAGES.exists()) {
+            rebuild();
+        }
+        String escaped = escape(message);
+        List<String> result = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(MESSAGES.toPath(),
+                StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() == Utils.UID_LENGTH + 1 + escaped.length()
+                        && line.endsWith(escaped)) {
+                    result.add(line.substring(0, Utils.UID_LENGTH));
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * Passes SHA-1 value of every commit to the specified action, in the
+     * order they were recorded. Only the commit catalog is read.
+     *
+     * @param action action to perform on each SHA-1 value
+     */
+    public static void forEachCommit(Consumer<String> action) {
+        if (!COMMITS.exists()) {
+            rebuild();
+        }
+        try (BufferedReader reader = Files.newBufferedReader(COMMITS.toPath(),
+                StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() == Utils.UID_LENGTH) {
+                    action.accept(line);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Discards the indexes and rebuilds them from all commits in the object store.
+     * This is the only operation whose cost grows with the size of the store.
+     */
+    public static void rebuild() {
+        List<Commit> commits = new ArrayList<>();
+        for (GitletObject object : GitletObject.listObjects()) {
+            if (object.getClass().equals(Commit.class)) {
+                commits.add((Commit) object);
+            }
+        }
+        replace(commits);
+    }
+
+    /**
+     * Discards the indexes and records the specified commits in them,
+     * in the given order.
+     *
+     * @param commits commits to record
+     */
+    public static void replace(List<Commit> commits) {
+        StringBuilder messages = new StringBuilder(), catalog = new StringBuilder();
+        describe(commits, messages, catalog);
+        Durable.write(MESSAGES, messages.toString().getBytes(StandardCharsets.UTF_8));
+        Durable.write(COMMITS, catalog.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Appends records of the specified commits to the index files.
+     *
+     * @param commits commits to append
+     */
+    private static void append(List<Commit> commits) {
+        StringBuilder messages = new StringBuilder(), catalog = new StringBuilder();
+        describe(commits, messages, catalog);
+        appendTo(MESSAGES, messages.toString());
+        appendTo(COMMITS, catalog.toString());
+    }
+
+    /**
+     * Appends lines describing the specified commits to the contents of
+     * the message index and of the commit catalog.
+     *
+     * @param commits  commits to describe
+     * @param messages content of the message index
+     * @param catalog  content of the commit catalog
+     */
+    private static void describe(List<Commit> commits, StringBuilder messages,
+                                 StringBuilder catalog) {
+        for (Commit commit : commits) {
+            messages.append(commit.sha1()).append(' ')
+                    .append(escape(commit.getMessage())).append('\n');
+            catalog.append(commit.sha1()).append('\n');
+        }
+    }
+
+    /**
+     * Appends a string to the end of the specified file, creating it if needed.
+     * An incomplete last line, left by an append cut short, is dropped first.
+     *
+     * @param f       file to append to
+     * @param content string to append
+     */
+    private static void appendTo(File f, String content) {
+        try (FileChannel out = FileChannel.open(f.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            out.truncate(completeLength(out));
+            out.position(out.size());
+            ByteBuffer bytes = ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                out.write(bytes);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Durable.written(f);
+    }
+
+    /**
+     * Returns the length of the part of the file open in CHANNEL that ends
+     * with its last line break, which is 0 if it has none.
+     */
+    private static long completeLength(FileChannel channel) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(4096);
+        for (long end = channel.size(); end > 0; ) {
+            long start = Math.max(0, end - block.capacity());
+            block.clear().limit((int) (end - start));
+            while (block.hasRemaining()) {
+                if (channel.read(block, start + block.position()) < 0) {
+                    break;
+                }
+            }
+            for (int i = block.position() - 1; i >= 0; i -= 1) {
+                if (block.get(i) == '\n') {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return 0;
+    }
+
+    /**
+     * Escapes a message so that it fits on one line of the index.
+     *
+     * @param message message to escape
+     * @return escaped message
+     */
+    private static String escape(String message) {
+        return message.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r");
+    }
+}
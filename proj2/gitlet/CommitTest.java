@@ -3,6 +3,10 @@ package gitlet;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.File;
+import java.util.Date;
+import java.util.HashMap;
+
 /**
  * Used to test functionality of {@link Commit}.
  *
@@ -29,5 +33,78 @@ public class CommitTest {
 
         Assert.assertEquals(Commit.lowestCommonAncestor(b, c), a);
     }
-}
 
+    /**
+     * Check whether encoding and decoding a commit or a staging area gives
+     * back the same object with the same SHA-1 value, and whether a commit
+     * stored in the binary format is read back under its name with the files
+     * of its trees.
+     */
+    @Test
+    public void testRoundTrip() {
+        HashMap<File, String> tracked = new HashMap<>();
+        tracked.put(new File("a.txt"), Utils.sha1("a"));
+        tracked.put(new File("dir/\u00fcber.txt"), Utils.sha1("b"));
+        Commit commit = new Commit("message \u2713\nsecond line", new Date(123456789L),
+                tracked, new String[]{Utils.sha1("p1"), Utils.sha1("p2")});
+
+        String s = commit.store();
+        Commit decoded = Commit.decode(commit.encode());
+        Assert.assertArrayEquals(commit.encode(), decoded.encode());
+        Assert.assertEquals(commit.sha1(), decoded.sha1());
+        Assert.assertEquals(commit.getMessage(), decoded.getMessage());
+        Assert.assertEquals(commit.getDate(), decoded.getDate());
+        Assert.assertEquals(commit.getTracked(), decoded.getTracked());
+        Assert.assertArrayEquals(commit.getParents(), decoded.getParents());
+
+        Commit read = (Commit) GitletObject.read(s);
+        Assert.assertEquals(s, read.sha1());
+        Assert.assertEquals(commit.getTracked(), read.getTracked());
+
+        Staged staged = new Staged();
+        staged.getChanges().put(new File("a.txt"), Utils.sha1("c"));
+        staged.stageForRemoval(new File("b.txt"));
+        Staged decodedStaged = Staged.decode(staged.encode());
+        Assert.assertEquals(staged.getChanges(), decodedStaged.getChanges());
+        Assert.assertEquals(staged.sha1(), decodedStaged.sha1());
+    }
+
+    /**
+     * Check whether a commit stored with Java serialization by an earlier
+     * version is still read under its original name.
+     */
+    @Test
+    public void testLegacyCommit() {
+        Commit commit = new Commit("legacy", new Date(42L), new HashMap<>(), new String[0]);
+        byte[] serialized = Utils.serialize(commit);
+        String s = Utils.sha1((Object) serialized);
+        GitletObject.store(s, GitletObject.TYPE_SERIALIZED, serialized);
+
+        Commit read = (Commit) GitletObject.read(s);
+        Assert.assertEquals(s, read.sha1());
+        Assert.assertEquals("legacy", read.getMessage());
+        Assert.assertNotEquals(s, Commit.decode(read.encode()).sha1());
+    }
+
+    /**
+     * Check whether an abbreviated commit name that also starts the name
+     * of a blob resolves to the commit.
+     */
+    @Test
+    public void testAutocompleteCommit() {
+        Commit commit = new Commit("abbreviated", new Date(5000L), new HashMap<>(),
+                new String[0]);
+        commit.store();
+        String prefix = commit.sha1().substring(0, 4);
+        byte[] content = null;
+        for (int i = 0; content == null; i += 1) {
+            byte[] candidate = ("blob " + i).getBytes();
+            if (Utils.sha1((Object) candidate).startsWith(prefix)) {
+                content = candidate;
+            }
+        }
+        new Blob(content).store();
+        Assert.assertEquals(2, GitletObject.listPrefix(prefix).size());
+        Assert.assertEquals(commit.sha1(), GitletObject.autocompleteCommit(prefix));
+    }
+}
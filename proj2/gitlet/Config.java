@@ -0,0 +1,108 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Properties;
+
+/**
+ * Repository configuration, stored as a properties file in
+ * {@code <Repository.GITLET_DIR>/config}.
+ * <p>
+ * Known keys:
+ * <ul>
+ *     <li>{@code compression}: codec of new objects, {@code none} or
+ *     {@code deflate} (the default), see {@link Codec}.</li>
+ *     <li>{@code threads}: number of threads that hash, read and write
+ *     files at once, a positive integer, by default the number of
+ *     processors, see {@link Workers}.</li>
+ *     <li>{@code cache.size}: number of bytes of objects kept in memory once
+ *     read, 64 MiB by default, see {@link ObjectCache}.</li>
+ *     <li>{@code cache.stats}: {@code true} to print the statistics of the
+ *     object cache to standard error after each command, or {@code false}
+ *     (the default).</li>
+ *     <li>{@code gc.grace}: number of seconds for which {@code gc} keeps
+ *     unreachable objects after they were written, 14 days by default, see
+ *     {@link Repository#gc(boolean)}.</li>
+ *     <li>{@code fsync}: {@code true} (the default) to sync files to the disk
+ *     before the files pointing to them are replaced, or {@code false},
+ *     see {@link Durable}.</li>
+ * </ul>
+ *
+ * @author Fei Pan
+ */
+public class Config {
+    /**
+     * The configuration file.
+     */
+    static final File CONFIG_FILE = Utils.join(Repository.GITLET_DIR, "config");
+
+    /**
+     * The loaded configuration, or null if it has not been loaded yet.
+     */
+    private static volatile Properties properties;
+
+    /**
+     * Returns the loaded configuration.
+     *
+     * @return the configuration
+     */
+    private static Properties properties() {
+        if (properties != null) {
+            return properties;
+        }
+        synchronized (Config.class) {
+            if (properties == null) {
+                Properties loaded = new Properties();
+                if (CONFIG_FILE.exists()) {
+                    try (InputStream in = Files.newInputStream(CONFIG_FILE.toPath())) {
+                        loaded.load(in);
+                    } catch (IOException excp) {
+                        throw new IllegalArgumentException(excp.getMessage());
+                    }
+                }
+                properties = loaded;
+            }
+            return properties;
+        }
+    }
+
+    /**
+     * Forgets the loaded configuration, so that it is read again when
+     * next used, in case another process has changed it.
+     */
+    static void reload() {
+        properties = null;
+    }
+
+    /**
+     * Returns the value of the specified key, or the default value if
+     * the key is not set.
+     *
+     * @param key          key to get
+     * @param defaultValue value to return if the key is not set
+     * @return value of the key
+     */
+    public static String get(String key, String defaultValue) {
+        return properties().getProperty(key, defaultValue);
+    }
+
+    /**
+     * Sets the specified key and saves the configuration.
+     *
+     * @param key   key to set
+     * @param value value to set
+     */
+    public static void set(String key, String value) {
+        properties().setProperty(key, value);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            properties.store(out, "gitlet configuration");
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Durable.write(CONFIG_FILE, out.toByteArray());
+    }
+}
@@ -0,0 +1,280 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Serves gitlet commands over a Unix domain socket, so that commands do not
+ * each pay for starting a JVM and loading classes, see {@link Client}.
+ * <p>
+ * {@code daemon} starts a daemon for the repository in the working directory,
+ * listening on {@code <Repository.GITLET_DIR>/daemon.sock}, and
+ * {@code daemon stop} stops it once it has finished the command it is
+ * running. Commands are run one at a time, in the order they arrive, in the
+ * working directory of the daemon. The configuration, the pack index and
+ * the commit graph are read again for every command, in case a command run
+ * without the daemon has changed them. Objects are immutable, but gc,
+ * migrate and recompress run without the daemon may delete or rewrite
+ * them, and always rewrite the pack index, the commit graph or the commit
+ * indexes when they do; the {@link ObjectCache} is cleared whenever one of
+ * these files has changed since the last command of the daemon.
+ * <p>
+ * A request is the length of the rest of the request as a 4-byte integer,
+ * the name of the charset the client prints with and the number of
+ * arguments as a 4-byte integer, followed by the arguments. Strings are in
+ * the format of {@link Commit}. The response is the exit status as a 4-byte
+ * integer, followed by the standard output and the standard error of the
+ * command, each as a 4-byte length followed by as many bytes. Output is
+ * encoded with the charset of the client, so it is byte for byte what
+ * {@link Main} would print.
+ *
+ * @author Fei Pan
+ */
+public class Daemon {
+    /**
+     * The socket the daemon listens on.
+     */
+    static final File SOCKET = Utils.join(Repository.GITLET_DIR, "daemon.sock");
+
+    /**
+     * Whether this process is a daemon serving commands.
+     */
+    private static boolean serving;
+    /**
+     * Whether the daemon has been asked to stop.
+     */
+    private static boolean stopping;
+    /**
+     * Last modification times and lengths of the files checked by
+     * {@link Daemon#refresh()}, as of the end of the last command, or null.
+     */
+    private static long[] state;
+
+    /**
+     * Serves commands until asked to stop. Fails if a daemon is already
+     * running for this repository.
+     */
+    public static void serve() {
+        if (serving) {
+            Utils.exit("A daemon is already running.");
+        }
+        SocketChannel running = connect();
+        if (running != null) {
+            close(running);
+            Utils.exit("A daemon is already running.");
+        }
+        SOCKET.delete();
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(SOCKET.toPath()));
+            serving = true;
+            while (!stopping) {
+                try (SocketChannel client = server.accept()) {
+                    handle(client);
+                } catch (IOException excp) {
+                    /* The client has gone away; serve the next one. */
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            serving = false;
+            stopping = false;
+            SOCKET.delete();
+        }
+    }
+
+    /**
+     * Stops the daemon. Within the daemon, it stops after the current
+     * command; otherwise the running daemon is asked to stop.
+     */
+    public static void stop() {
+        if (serving) {
+            stopping = true;
+            return;
+        }
+        SocketChannel channel = connect();
+        if (channel == null) {
+            Utils.exit("No daemon is running.");
+        }
+        try (channel) {
+            forward(channel, new String[]{"daemon", "stop"}, System.out, System.err);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Connects to the daemon of the repository in the working directory.
+     *
+     * @return a connected channel, or null if no daemon is running
+     */
+    static SocketChannel connect() {
+        if (!SOCKET.exists()) {
+            return null;
+        }
+        try {
+            return SocketChannel.open(UnixDomainSocketAddress.of(SOCKET.toPath()));
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /**
+     * Sends the command given by ARGS to the daemon over CHANNEL, and copies
+     * its standard output and standard error to OUT and ERR.
+     *
+     * @param channel channel connected to the daemon
+     * @param args    arguments of the command
+     * @param out     stream to copy standard output to
+     * @param err     stream to copy standard error to
+     * @return the exit status of the command
+     * @throws IOException if the daemon cannot be reached
+     */
+    static int forward(SocketChannel channel, String[] args,
+                       OutputStream out, OutputStream err) throws IOException {
+        String charset = System.getProperty("sun.stdout.encoding",
+                System.getProperty("file.encoding"));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream request = new DataOutputStream(bytes)) {
+            Utils.writeString(request, charset);
+            request.writeInt(args.length);
+            for (String arg : args) {
+                Utils.writeString(request, arg);
+            }
+        }
+        DataOutputStream request = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel)));
+        request.writeInt(bytes.size());
+        bytes.writeTo(request);
+        request.flush();
+
+        DataInputStream response = new DataInputStream(Channels.newInputStream(channel));
+        int status = response.readInt();
+        out.write(response.readNBytes(response.readInt()));
+        out.flush();
+        err.write(response.readNBytes(response.readInt()));
+        err.flush();
+        return status;
+    }
+
+    /**
+     * Reads a command from CHANNEL, runs it and sends back its output.
+     */
+    private static void handle(SocketChannel channel) throws IOException {
+        DataInputStream request = new DataInputStream(Channels.newInputStream(channel));
+        ByteBuffer in = ByteBuffer.wrap(request.readNBytes(request.readInt()));
+        String name = Utils.readString(in);
+        Charset charset = Charset.isSupported(name) ? Charset.forName(name)
+                : Charset.defaultCharset();
+        String[] args = new String[in.getInt()];
+        for (int i = 0; i < args.length; i += 1) {
+            args[i] = Utils.readString(in);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(),
+                err = new ByteArrayOutputStream();
+        int status = run(args, charset, out, err);
+
+        DataOutputStream response = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel)));
+        response.writeInt(status);
+        response.writeInt(out.size());
+        out.writeTo(response);
+        response.writeInt(err.size());
+        err.writeTo(response);
+        response.flush();
+    }
+
+    /**
+     * Runs the command given by ARGS as {@link Main} would, printing to OUT
+     * and ERR with CHARSET, and returns its exit status.
+     * An exception escaping the command is reported as the JVM would.
+     */
+    private static int run(String[] args, Charset charset,
+                           OutputStream out, OutputStream err) {
+        PrintStream stdout = System.out, stderr = System.err;
+        Config.reload();
+        Pack.reload();
+        CommitGraph.reload();
+        refresh();
+        try {
+            System.setOut(new PrintStream(out, true, charset));
+            System.setErr(new PrintStream(err, true, charset));
+            Main.run(args);
+            return 0;
+        } catch (RuntimeException | Error excp) {
+            System.err.print("Exception in thread \"main\" ");
+            excp.printStackTrace();
+            return 1;
+        } finally {
+            System.out.flush();
+            System.err.flush();
+            System.setOut(stdout);
+            System.setErr(stderr);
+            settle();
+        }
+    }
+
+    /**
+     * Clears the {@link ObjectCache} if the pack index, the commit graph or
+     * the commit indexes have changed since the end of the last command,
+     * which can only have been done by another process.
+     */
+    static synchronized void refresh() {
+        if (!Arrays.equals(fileState(), state)) {
+            ObjectCache.clear();
+        }
+    }
+
+    /**
+     * Records the state of the files checked by {@link Daemon#refresh()} at
+     * the end of a command, so that the changes made by the command itself
+     * do not clear the cache.
+     */
+    static synchronized void settle() {
+        state = fileState();
+    }
+
+    /**
+     * Returns the last modification times and lengths of the pack index, the
+     * commit graph and the commit indexes.
+     */
+    private static long[] fileState() {
+        File[] files = {Pack.INDEX_FILE, CommitGraph.GRAPH, CommitIndex.COMMITS,
+            CommitIndex.MESSAGES};
+        long[] result = new long[2 * files.length];
+        for (int i = 0; i < files.length; i += 1) {
+            result[2 * i] = files[i].lastModified();
+            result[2 * i + 1] = files[i].length();
+        }
+        return result;
+    }
+
+    /**
+     * Closes CHANNEL if it is not null, ignoring errors.
+     */
+    private static void close(SocketChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException excp) {
+            /* Nothing else to do. */
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package gitlet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.SocketChannel;
+import java.util.Date;
+import java.util.HashMap;
+
+/**
+ * Used to test functionality of {@link Daemon}.
+ *
+ * @author Fei Pan
+ */
+public class DaemonTest {
+    /**
+     * Returns what the command given by ARGS prints when run by {@link Main}.
+     */
+    private static byte[] oneShot(String... args) {
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(out, true));
+        try {
+            Main.run(args);
+        } finally {
+            System.setOut(stdout);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns what the command given by ARGS prints when run by the daemon,
+     * after checking that it exits normally.
+     */
+    private static byte[] throughDaemon(String... args) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(),
+                err = new ByteArrayOutputStream();
+        try (SocketChannel channel = Daemon.connect()) {
+            Assert.assertNotNull(channel);
+            Assert.assertEquals(0, Daemon.forward(channel, args, out, err));
+        }
+        Assert.assertEquals(0, err.size());
+        return out.toByteArray();
+    }
+
+    /**
+     * Check whether commands ending with a message print the same through
+     * the daemon as they do on their own, and whether the daemon stops.
+     */
+    @Test
+    public void testSameOutput() throws IOException, InterruptedException {
+        Repository.GITLET_DIR.mkdirs();
+        Thread daemon = new Thread(() -> Main.run(new String[]{"daemon"}));
+        daemon.start();
+        for (int i = 0; i < 100 && !Daemon.SOCKET.exists(); i += 1) {
+            Thread.sleep(50);
+        }
+
+        String[][] commands = {{"no-such-command"}, {"add"}, {"config", "no.such.key"},
+                {"checkout", "a", "b", "c", "d"}, {"daemon"}};
+        for (String[] command : commands) {
+            byte[] expected = oneShot(command);
+            Assert.assertTrue(expected.length > 0);
+            Assert.assertArrayEquals(expected, throughDaemon(command));
+        }
+
+        Assert.assertArrayEquals(new byte[0], throughDaemon("daemon", "stop"));
+        daemon.join(5000);
+        Assert.assertFalse(daemon.isAlive());
+        Assert.assertFalse(Daemon.SOCKET.exists());
+    }
+
+    /**
+     * Check whether cached objects survive until another process changes
+     * the commit graph, as gc does after deleting objects.
+     */
+    @Test
+    public void testCacheInvalidation() {
+        Repository.GITLET_DIR.mkdirs();
+        Commit commit = new Commit("cached", new Date(), new HashMap<>(), new String[0]);
+        commit.store();
+        ObjectCache.put(commit.sha1(), commit);
+
+        Daemon.settle();
+        Daemon.refresh();
+        Assert.assertSame(commit, ObjectCache.get(commit.sha1()));
+
+        CommitGraph.record(commit);
+        Daemon.refresh();
+        Assert.assertNull(ObjectCache.get(commit.sha1()));
+    }
+}
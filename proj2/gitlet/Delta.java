@@ -0,0 +1,207 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Computes and applies binary deltas, which describe a target byte array
+ * in terms of a base byte array.
+ * <p>
+ * A delta starts with the length of the target, followed by instructions.
+ * An instruction whose first byte has its high bit set copies a range of the
+ * base, given by an offset and a length. Otherwise the first byte is the
+ * number of literal bytes that follow it, at most 127. All numbers are
+ * written as variable-length integers, seven bits per byte.
+ * <p>
+ * To compute a delta, the base is indexed by hashes of its blocks of
+ * {@link Delta#BLOCK} bytes. A rolling hash of the target is then looked up
+ * in the index at every position, and matches are extended in both
+ * directions. This takes time linear in the lengths of base and target.
+ *
+ * @author Fei Pan
+ */
+public class Delta {
+    /**
+     * Length of the blocks of the base that are indexed.
+     */
+    private static final int BLOCK = 16;
+    /**
+     * Multiplier of the rolling hash.
+     */
+    private static final int PRIME = 31;
+    /**
+     * PRIME to the power of BLOCK - 1, used to roll the hash.
+     */
+    private static final int TOP_POWER;
+    /**
+     * Maximum number of literal bytes in one instruction.
+     */
+    private static final int MAX_INSERT = 127;
+    /**
+     * Flag of the first byte of a copy instruction.
+     */
+    private static final int COPY = 0x80;
+
+    static {
+        int power = 1;
+        for (int i = 1; i < BLOCK; i += 1) {
+            power *= PRIME;
+        }
+        TOP_POWER = power;
+    }
+
+    /**
+     * Returns a delta that turns base into target.
+     *
+     * @param base   the base
+     * @param target the target
+     * @return the delta
+     */
+    public static byte[] encode(byte[] base, byte[] target) {
+        int bits = 1;
+        while ((1 << bits) < 2 * (base.length / BLOCK + 1)) {
+            bits += 1;
+        }
+        int[] table = new int[1 << bits];
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            int slot = slot(hash(base, i), bits);
+            if (table[slot] == 0) {
+                table[slot] = i + 1;
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeNumber(out, target.length);
+        int literalStart = 0, i = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (i + BLOCK <= target.length) {
+            int candidate = table[slot(h, bits)] - 1;
+            if (candidate >= 0 && matches(base, candidate, target, i)) {
+                int start = i, from = candidate;
+                while (start > literalStart && from > 0 && base[from - 1] == target[start - 1]) {
+                    start -= 1;
+                    from -= 1;
+                }
+                int end = i + BLOCK, baseEnd = candidate + BLOCK;
+                while (end < target.length && baseEnd < base.length
+                        && base[baseEnd] == target[end]) {
+                    end += 1;
+                    baseEnd += 1;
+                }
+                writeLiterals(out, target, literalStart, start);
+                out.write(COPY);
+                writeNumber(out, from);
+                writeNumber(out, end - start);
+                i = end;
+                literalStart = end;
+                if (i + BLOCK <= target.length) {
+                    h = hash(target, i);
+                }
+            } else {
+                if (i + BLOCK < target.length) {
+                    h = (h - target[i] * TOP_POWER) * PRIME + target[i + BLOCK];
+                }
+                i += 1;
+            }
+        }
+        writeLiterals(out, target, literalStart, target.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns the target described by the specified base and delta.
+     *
+     * @param base  the base
+     * @param delta the delta
+     * @return the target
+     */
+    public static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = {0};
+        byte[] target = new byte[Math.toIntExact(readNumber(delta, pos))];
+        int length = 0;
+        while (pos[0] < delta.length) {
+            int cmd = delta[pos[0]++] & 0xff;
+            if ((cmd & COPY) != 0) {
+                int offset = Math.toIntExact(readNumber(delta, pos));
+                int n = Math.toIntExact(readNumber(delta, pos));
+                System.arraycopy(base, offset, target, length, n);
+                length += n;
+            } else {
+                System.arraycopy(delta, pos[0], target, length, cmd);
+                pos[0] += cmd;
+                length += cmd;
+            }
+        }
+        if (length != target.length) {
+            throw Utils.error("Delta is corrupt.");
+        }
+        return target;
+    }
+
+    /**
+     * Returns the hash of the block of B starting at I.
+     */
+    private static int hash(byte[] b, int i) {
+        int h = 0;
+        for (int k = 0; k < BLOCK; k += 1) {
+            h = h * PRIME + b[i + k];
+        }
+        return h;
+    }
+
+    /**
+     * Returns the slot of hash H in a table of 2 to the power of BITS slots.
+     */
+    private static int slot(int h, int bits) {
+        return (h * 0x9E3779B1) >>> (32 - bits);
+    }
+
+    /**
+     * Returns true iff the blocks of BASE at FROM and of TARGET at I are equal.
+     */
+    private static boolean matches(byte[] base, int from, byte[] target, int i) {
+        for (int k = 0; k < BLOCK; k += 1) {
+            if (base[from + k] != target[i + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes insert instructions for bytes START to END of TARGET to OUT.
+     */
+    private static void writeLiterals(ByteArrayOutputStream out, byte[] target,
+                                      int start, int end) {
+        while (start < end) {
+            int n = Math.min(MAX_INSERT, end - start);
+            out.write(n);
+            out.write(target, start, n);
+            start += n;
+        }
+    }
+
+    /**
+     * Writes non-negative number N to OUT as a variable-length integer.
+     */
+    private static void writeNumber(ByteArrayOutputStream out, long n) {
+        while (n >= 0x80) {
+            out.write((int) (n & 0x7f) | 0x80);
+            n >>>= 7;
+        }
+        out.write((int) n);
+    }
+
+    /**
+     * Reads a variable-length integer from B at POS[0], advancing POS[0].
+     */
+    private static long readNumber(byte[] b, int[] pos) {
+        long n = 0;
+        for (int shift = 0; ; shift += 7) {
+            int x = b[pos[0]++] & 0xff;
+            n |= (long) (x & 0x7f) << shift;
+            if ((x & 0x80) == 0) {
+                return n;
+            }
+        }
+    }
+}
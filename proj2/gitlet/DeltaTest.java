@@ -0,0 +1,45 @@
+package gitlet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Used to test functionality of {@link Delta}.
+ *
+ * @author Fei Pan
+ */
+public class DeltaTest {
+    /**
+     * Check that applying a delta gives back the target, and that a
+     * small change of a large file gives a small delta.
+     */
+    @Test
+    public void testRoundTrip() {
+        Random random = new Random(61);
+        byte[] base = new byte[1 << 20];
+        random.nextBytes(base);
+        byte[] target = Arrays.copyOf(base, base.length + 100);
+        target[12345] += 1;
+        System.arraycopy(base, 0, target, base.length, 100);
+
+        byte[] delta = Delta.encode(base, target);
+        Assert.assertArrayEquals(target, Delta.apply(base, delta));
+        Assert.assertTrue(delta.length < 1000);
+    }
+
+    /**
+     * Check deltas between unrelated, short and empty arrays.
+     */
+    @Test
+    public void testEdgeCases() {
+        byte[] empty = new byte[0], small = "abc".getBytes(), other = new byte[5000];
+        new Random(61).nextBytes(other);
+        Assert.assertArrayEquals(small, Delta.apply(empty, Delta.encode(empty, small)));
+        Assert.assertArrayEquals(empty, Delta.apply(small, Delta.encode(small, empty)));
+        Assert.assertArrayEquals(other, Delta.apply(small, Delta.encode(small, other)));
+        Assert.assertArrayEquals(small, Delta.apply(other, Delta.encode(other, small)));
+    }
+}
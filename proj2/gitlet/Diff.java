@@ -0,0 +1,439 @@
+package gitlet;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Computes line differences between two texts, and prints them as unified
+ * diffs.
+ * <p>
+ * Texts are split into lines, see {@link Diff#lines(byte[])}, and each
+ * distinct line is numbered, so that lines are compared as integers. The
+ * difference is a list of {@link Edit}s, regions of the first text replaced
+ * by regions of the second, found with the algorithm of Myers, "An O(ND)
+ * Difference Algorithm and Its Variations" (1986), in its linear-space
+ * form: the lines common to the start and the end are set aside, the middle
+ * snake of the shortest edit script is found by searching from both ends at
+ * once, and the regions before and after it are compared in the same way.
+ * This takes time O((N + M) D) and space O(N + M) for texts of N and M lines
+ * differing in D lines. As in GNU diff, lines that do not occur in the other
+ * text at all, such as lines rewritten in one of them, are set aside first,
+ * since they can only be changes. This leaves the algorithm with the lines
+ * that moved, so that D stays small for texts with many scattered edits.
+ *
+ * @author Fei Pan
+ */
+public class Diff {
+    /**
+     * Number of unchanged lines shown around each change by default.
+     */
+    static final int CONTEXT = 3;
+
+    /**
+     * A region of the first text, lines {@code aStart} to {@code aEnd}
+     * exclusive, replaced by lines {@code bStart} to {@code bEnd} exclusive
+     * of the second text. Either region may be empty.
+     */
+    static class Edit {
+        /**
+         * First line of the region of the first text.
+         */
+        final int aStart;
+        /**
+         * Line after the region of the first text.
+         */
+        final int aEnd;
+        /**
+         * First line of the region of the second text.
+         */
+        final int bStart;
+        /**
+         * Line after the region of the second text.
+         */
+        final int bEnd;
+
+        /**
+         * Creates an Edit.
+         *
+         * @param aStart first line of the region of the first text
+         * @param aEnd   line after the region of the first text
+         * @param bStart first line of the region of the second text
+         * @param bEnd   line after the region of the second text
+         */
+        Edit(int aStart, int aEnd, int bStart, int bEnd) {
+            this.aStart = aStart;
+            this.aEnd = aEnd;
+            this.bStart = bStart;
+            this.bEnd = bEnd;
+        }
+    }
+
+    /**
+     * Lines of the first text, numbered.
+     */
+    private final int[] a;
+    /**
+     * Lines of the second text, numbered.
+     */
+    private final int[] b;
+    /**
+     * Furthest reaching paths from the start, by diagonal.
+     */
+    private final int[] forward;
+    /**
+     * Furthest reaching paths from the end, by diagonal.
+     */
+    private final int[] backward;
+    /**
+     * Edits found so far, in order.
+     */
+    private final List<Edit> edits = new ArrayList<>();
+
+    /**
+     * Creates a Diff of the specified numbered lines.
+     */
+    private Diff(int[] a, int[] b) {
+        this.a = a;
+        this.b = b;
+        int size = 2 * ((a.length + b.length + 1) / 2) + 2;
+        forward = new int[size];
+        backward = new int[size];
+    }
+
+    /**
+     * Returns the lines of the specified text. Every line but the last
+     * ends with its newline, and the last one does if the text does.
+     * Lines are decoded as UTF-8.
+     *
+     * @param content the text
+     * @return lines of the text
+     */
+    static List<String> lines(byte[] content) {
+        return lines(content, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Like {@link Diff#lines(byte[])}, but lines are decoded with the
+     * specified charset. ISO-8859-1 keeps every byte as it is.
+     *
+     * @param content the text
+     * @param charset charset to decode lines with
+     * @return lines of the text
+     */
+    static List<String> lines(byte[] content, Charset charset) {
+        List<String> result = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < content.length; i += 1) {
+            if (content[i] == '\n') {
+                result.add(new String(content, start, i + 1 - start, charset));
+                start = i + 1;
+            }
+        }
+        if (start < content.length) {
+            result.add(new String(content, start, content.length - start, charset));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the edits that turn the lines A into the lines B.
+     *
+     * @param a lines of the first text
+     * @param b lines of the second text
+     * @return the edits, in order and separated by unchanged lines
+     */
+    static List<Edit> diff(List<String> a, List<String> b) {
+        HashMap<String, Integer> numbers = new HashMap<>();
+        return diff(number(a, numbers), number(b, numbers));
+    }
+
+    /**
+     * Returns the edits that turn the numbered lines A into the numbered
+     * lines B, where equal lines have equal small numbers, as given by
+     * {@link Diff#diff(List, List)}.
+     *
+     * @param a numbered lines of the first text
+     * @param b numbered lines of the second text
+     * @return the edits, in order and separated by unchanged lines
+     */
+    static List<Edit> diff(int[] a, int[] b) {
+        int numbers = 0;
+        for (int line : a) {
+            numbers = Math.max(numbers, line + 1);
+        }
+        for (int line : b) {
+            numbers = Math.max(numbers, line + 1);
+        }
+        boolean[] inA = new boolean[numbers], inB = new boolean[numbers];
+        for (int line : a) {
+            inA[line] = true;
+        }
+        for (int line : b) {
+            inB[line] = true;
+        }
+        int[] aKept = kept(a, inB), bKept = kept(b, inA);
+        int[] aLines = new int[aKept.length], bLines = new int[bKept.length];
+        for (int i = 0; i < aKept.length; i += 1) {
+            aLines[i] = a[aKept[i]];
+        }
+        for (int i = 0; i < bKept.length; i += 1) {
+            bLines[i] = b[bKept[i]];
+        }
+        Diff diff = new Diff(aLines, bLines);
+        diff.compare(0, aLines.length, 0, bLines.length);
+
+        boolean[] aChanged = changed(a.length, aKept), bChanged = changed(b.length, bKept);
+        for (Edit edit : diff.edits) {
+            for (int i = edit.aStart; i < edit.aEnd; i += 1) {
+                aChanged[aKept[i]] = true;
+            }
+            for (int i = edit.bStart; i < edit.bEnd; i += 1) {
+                bChanged[bKept[i]] = true;
+            }
+        }
+        List<Edit> result = new ArrayList<>();
+        int i = 0, j = 0;
+        while (i < a.length || j < b.length) {
+            if (i < a.length && j < b.length && !aChanged[i] && !bChanged[j]) {
+                i += 1;
+                j += 1;
+                continue;
+            }
+            int aStart = i, bStart = j;
+            while (i < a.length && aChanged[i]) {
+                i += 1;
+            }
+            while (j < b.length && bChanged[j]) {
+                j += 1;
+            }
+            result.add(new Edit(aStart, i, bStart, j));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the positions of the LINES that occur in the other text,
+     * as given by OTHER.
+     */
+    private static int[] kept(int[] lines, boolean[] other) {
+        int n = 0;
+        for (int line : lines) {
+            n += other[line] ? 1 : 0;
+        }
+        int[] result = new int[n];
+        n = 0;
+        for (int i = 0; i < lines.length; i += 1) {
+            if (other[lines[i]]) {
+                result[n] = i;
+                n += 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether each of LENGTH lines is changed, which so far are
+     * those not at the positions KEPT.
+     */
+    private static boolean[] changed(int length, int[] kept) {
+        boolean[] result = new boolean[length];
+        Arrays.fill(result, true);
+        for (int i : kept) {
+            result[i] = false;
+        }
+        return result;
+    }
+
+    /**
+     * Returns LINES, numbered by NUMBERS, to which new lines are added.
+     */
+    private static int[] number(List<String> lines, HashMap<String, Integer> numbers) {
+        int[] result = new int[lines.size()];
+        for (int i = 0; i < result.length; i += 1) {
+            Integer n = numbers.putIfAbsent(lines.get(i), numbers.size());
+            result[i] = n == null ? numbers.size() - 1 : n;
+        }
+        return result;
+    }
+
+    /**
+     * Finds the edits turning a[aStart, aEnd) into b[bStart, bEnd).
+     */
+    private void compare(int aStart, int aEnd, int bStart, int bEnd) {
+        while (aStart < aEnd && bStart < bEnd && a[aStart] == b[bStart]) {
+            aStart += 1;
+            bStart += 1;
+        }
+        while (aStart < aEnd && bStart < bEnd && a[aEnd - 1] == b[bEnd - 1]) {
+            aEnd -= 1;
+            bEnd -= 1;
+        }
+        if (aStart == aEnd || bStart == bEnd) {
+            if (aStart < aEnd || bStart < bEnd) {
+                add(aStart, aEnd, bStart, bEnd);
+            }
+            return;
+        }
+        long split = middleSnake(aStart, aEnd, bStart, bEnd);
+        if (split < 0) {
+            add(aStart, aEnd, bStart, bEnd);
+            return;
+        }
+        int x = aStart + (int) (split >>> 32), y = bStart + (int) split;
+        compare(aStart, x, bStart, y);
+        compare(x, aEnd, y, bEnd);
+    }
+
+    /**
+     * Returns a point through which a shortest edit script turning
+     * a[aStart, aEnd) into b[bStart, bEnd) passes, relative to the start of
+     * the regions, as the offset into A in the high 32 bits and the offset
+     * into B in the low 32 bits, or -1 if the regions have no line in common.
+     */
+    private long middleSnake(int aStart, int aEnd, int bStart, int bEnd) {
+        int n = aEnd - aStart, m = bEnd - bStart;
+        int maxD = (n + m + 1) / 2, offset = maxD;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        Arrays.fill(forward, 0, 2 * maxD + 2, -1);
+        Arrays.fill(backward, 0, 2 * maxD + 2, -1);
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        int k1Start = 0, k1End = 0, k2Start = 0, k2End = 0;
+        for (int d = 0; d < maxD; d += 1) {
+            for (int k1 = -d + k1Start; k1 <= d - k1End; k1 += 2) {
+                int k1Offset = offset + k1;
+                int x1 = k1 == -d || (k1 != d && forward[k1Offset - 1] < forward[k1Offset + 1])
+                        ? forward[k1Offset + 1] : forward[k1Offset - 1] + 1;
+                int y1 = x1 - k1;
+                while (x1 < n && y1 < m && a[aStart + x1] == b[bStart + y1]) {
+                    x1 += 1;
+                    y1 += 1;
+                }
+                forward[k1Offset] = x1;
+                if (x1 > n) {
+                    k1End += 2;
+                } else if (y1 > m) {
+                    k1Start += 2;
+                } else if (odd) {
+                    int k2Offset = offset + delta - k1;
+                    if (k2Offset >= 0 && k2Offset < 2 * maxD + 2 && backward[k2Offset] != -1
+                            && x1 >= n - backward[k2Offset]) {
+                        return ((long) x1 << 32) | y1;
+                    }
+                }
+            }
+            for (int k2 = -d + k2Start; k2 <= d - k2End; k2 += 2) {
+                int k2Offset = offset + k2;
+                int x2 = k2 == -d || (k2 != d && backward[k2Offset - 1] < backward[k2Offset + 1])
+                        ? backward[k2Offset + 1] : backward[k2Offset - 1] + 1;
+                int y2 = x2 - k2;
+                while (x2 < n && y2 < m && a[aEnd - x2 - 1] == b[bEnd - y2 - 1]) {
+                    x2 += 1;
+                    y2 += 1;
+                }
+                backward[k2Offset] = x2;
+                if (x2 > n) {
+                    k2End += 2;
+                } else if (y2 > m) {
+                    k2Start += 2;
+                } else if (!odd) {
+                    int k1Offset = offset + delta - k2;
+                    if (k1Offset >= 0 && k1Offset < 2 * maxD + 2 && forward[k1Offset] != -1) {
+                        int x1 = forward[k1Offset];
+                        int y1 = offset + x1 - k1Offset;
+                        if (x1 >= n - x2) {
+                            return ((long) x1 << 32) | y1;
+                        }
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Adds the edit replacing a[aStart, aEnd) by b[bStart, bEnd), merging
+     * it with the previous edit if they touch.
+     */
+    private void add(int aStart, int aEnd, int bStart, int bEnd) {
+        int last = edits.size() - 1;
+        if (last >= 0 && edits.get(last).aEnd == aStart && edits.get(last).bEnd == bStart) {
+            Edit previous = edits.remove(last);
+            aStart = previous.aStart;
+            bStart = previous.bStart;
+        }
+        edits.add(new Edit(aStart, aEnd, bStart, bEnd));
+    }
+
+    /**
+     * Appends the hunks of a unified diff turning the lines A into the lines
+     * B with the specified edits to OUT, with CONTEXT unchanged lines around
+     * each change. Changes separated by at most twice as many unchanged
+     * lines share a hunk. A last line without a newline is marked as in
+     * git.
+     *
+     * @param out     buffer to append to
+     * @param a       lines of the first text
+     * @param b       lines of the second text
+     * @param edits   edits turning A into B, see {@link Diff#diff(List, List)}
+     * @param context number of unchanged lines around each change
+     */
+    static void unified(StringBuilder out, List<String> a, List<String> b,
+                        List<Edit> edits, int context) {
+        for (int first = 0; first < edits.size(); ) {
+            int last = first;
+            while (last + 1 < edits.size()
+                    && edits.get(last + 1).aStart - edits.get(last).aEnd <= 2 * context) {
+                last += 1;
+            }
+            Edit start = edits.get(first), end = edits.get(last);
+            int aFrom = Math.max(0, start.aStart - context),
+                    bFrom = Math.max(0, start.bStart - context),
+                    aTo = Math.min(a.size(), end.aEnd + context),
+                    bTo = Math.min(b.size(), end.bEnd + context);
+            out.append("@@ -").append(range(aFrom, aTo - aFrom))
+                    .append(" +").append(range(bFrom, bTo - bFrom)).append(" @@\n");
+            int i = aFrom;
+            for (Edit edit : edits.subList(first, last + 1)) {
+                for (; i < edit.aStart; i += 1) {
+                    line(out, ' ', a.get(i));
+                }
+                for (; i < edit.aEnd; i += 1) {
+                    line(out, '-', a.get(i));
+                }
+                for (int j = edit.bStart; j < edit.bEnd; j += 1) {
+                    line(out, '+', b.get(j));
+                }
+            }
+            for (; i < aTo; i += 1) {
+                line(out, ' ', a.get(i));
+            }
+            first = last + 1;
+        }
+    }
+
+    /**
+     * Returns the range of LENGTH lines from START, as in a hunk header.
+     */
+    private static String range(int start, int length) {
+        if (length == 1) {
+            return Integer.toString(start + 1);
+        }
+        return (length == 0 ? start : start + 1) + "," + length;
+    }
+
+    /**
+     * Appends LINE to OUT, prefixed with PREFIX and with its newline.
+     */
+    private static void line(StringBuilder out, char prefix, String line) {
+        out.append(prefix).append(line);
+        if (!line.endsWith("\n")) {
+            out.append("\n\\ No newline at end of file\n");
+        }
+    }
+}
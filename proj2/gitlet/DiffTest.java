@@ -0,0 +1,109 @@
+package gitlet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Used to test functionality of {@link Diff}.
+ *
+ * @author Fei Pan
+ */
+public class DiffTest {
+    /**
+     * Returns the lines B rebuilt from the lines A and the EDITS between them.
+     */
+    private static List<Integer> apply(int[] a, int[] b, List<Diff.Edit> edits) {
+        List<Integer> result = new ArrayList<>();
+        int i = 0;
+        for (Diff.Edit edit : edits) {
+            for (; i < edit.aStart; i += 1) {
+                result.add(a[i]);
+            }
+            for (int j = edit.bStart; j < edit.bEnd; j += 1) {
+                result.add(b[j]);
+            }
+            i = edit.aEnd;
+        }
+        for (; i < a.length; i += 1) {
+            result.add(a[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Check on random short texts that the edits turn the first text into
+     * the second, and that they change as few lines as possible, which is
+     * found from the longest common subsequence.
+     */
+    @Test
+    public void testShortestEdits() {
+        Random random = new Random(61);
+        for (int t = 0; t < 2000; t += 1) {
+            int[] a = new int[random.nextInt(20)], b = new int[random.nextInt(20)];
+            int lines = 1 + random.nextInt(4);
+            for (int i = 0; i < a.length; i += 1) {
+                a[i] = random.nextInt(lines);
+            }
+            for (int i = 0; i < b.length; i += 1) {
+                b[i] = random.nextInt(lines);
+            }
+            List<Diff.Edit> edits = Diff.diff(a, b);
+            List<Integer> expected = new ArrayList<>();
+            for (int line : b) {
+                expected.add(line);
+            }
+            Assert.assertEquals(expected, apply(a, b, edits));
+
+            int[][] common = new int[a.length + 1][b.length + 1];
+            for (int i = a.length - 1; i >= 0; i -= 1) {
+                for (int j = b.length - 1; j >= 0; j -= 1) {
+                    common[i][j] = a[i] == b[j] ? common[i + 1][j + 1] + 1
+                            : Math.max(common[i + 1][j], common[i][j + 1]);
+                }
+            }
+            int changed = 0;
+            for (Diff.Edit edit : edits) {
+                changed += edit.aEnd - edit.aStart + edit.bEnd - edit.bStart;
+            }
+            Assert.assertEquals(a.length + b.length - 2 * common[0][0], changed);
+        }
+    }
+
+    /**
+     * Check that a few changes in texts of a million lines are found.
+     */
+    @Test
+    public void testLargeText() {
+        Random random = new Random(61);
+        int[] a = new int[1 << 20], b = new int[a.length];
+        for (int i = 0; i < a.length; i += 1) {
+            a[i] = random.nextInt(a.length);
+            b[i] = a[i];
+        }
+        for (int i = 0; i < 100; i += 1) {
+            b[random.nextInt(b.length)] = 0;
+        }
+        List<Diff.Edit> edits = Diff.diff(a, b);
+        Assert.assertTrue(edits.size() <= 100);
+        Assert.assertEquals(b.length, apply(a, b, edits).size());
+    }
+
+    /**
+     * Check the hunks of a unified diff, including a last line without
+     * a newline.
+     */
+    @Test
+    public void testUnified() {
+        List<String> a = Diff.lines("a\nb\nc\nd\ne\nf\ng\nh\ni\nj\n".getBytes()),
+                b = Diff.lines("a\nB\nc\nd\ne\nf\ng\nh\ni\nj\nk".getBytes());
+        StringBuilder out = new StringBuilder();
+        Diff.unified(out, a, b, Diff.diff(a, b), Diff.CONTEXT);
+        Assert.assertEquals("@@ -1,5 +1,5 @@\n a\n-b\n+B\n c\n d\n e\n"
+                + "@@ -8,3 +8,4 @@\n h\n i\n j\n+k\n\\ No newline at end of file\n",
+                out.toString());
+    }
+}
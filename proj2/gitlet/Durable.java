@@ -0,0 +1,172 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Makes the files of a repository survive crashes, with as few calls to
+ * fsync as possible.
+ * <p>
+ * Files are never written in place. Objects are written to temporary files
+ * and renamed into place, see {@link GitletObject#install(String)}, and are
+ * then only marked as written, as are appended files such as the commit
+ * graph. Files that point to other files, such as refs and the staging area,
+ * are replaced through {@link Durable#replace(File, File)}. Before such a file
+ * is replaced, every file marked as written is synced in one group, by
+ * {@link Workers} so that the file system can commit them together, and then
+ * each of their directories once, along with the parent of each directory
+ * created for them, such as a fan-out directory of the object store, so
+ * that the new directory is found after a crash. Hence a file pointing to
+ * an object never reaches the disk before the object does, and a command
+ * costs a number of fsyncs that does not grow with the number of files it
+ * replaces. Files still marked when a command ends are synced by
+ * {@link Main}.
+ * <p>
+ * Syncing can be turned off, at the expense of crash safety, by setting the
+ * {@code fsync} configuration key to {@code false}, see {@link Config}.
+ *
+ * @author Fei Pan
+ */
+public class Durable {
+    /**
+     * Files written since the last group sync.
+     */
+    private static final Set<File> WRITTEN = new LinkedHashSet<>();
+    /**
+     * Directories created since the last group sync.
+     */
+    private static final Set<File> CREATED = new LinkedHashSet<>();
+    /**
+     * Number of files and directories synced.
+     */
+    private static long syncs;
+
+    /**
+     * Marks the specified file, which has been written, to be synced
+     * before the next file is replaced.
+     *
+     * @param f file written
+     */
+    static synchronized void written(File f) {
+        WRITTEN.add(f);
+    }
+
+    /**
+     * Marks the specified directory, which has been created for files to
+     * be marked as written, so that its parent is synced along with it.
+     *
+     * @param dir directory created
+     */
+    static synchronized void created(File dir) {
+        CREATED.add(dir);
+    }
+
+    /**
+     * Writes the specified content to a temporary file and replaces the
+     * specified file with it.
+     *
+     * @param f       file to write
+     * @param content content of the file
+     */
+    static void write(File f, byte[] content) {
+        File temp = Utils.join(Repository.GITLET_DIR, "tmp-" + f.getName());
+        Utils.writeContents(temp, (Object) content);
+        replace(temp, f);
+    }
+
+    /**
+     * Replaces the target file with the temporary file, after syncing all
+     * files marked as written and the temporary file. The directory of the
+     * target is synced afterwards, so that the replacement is durable.
+     *
+     * @param temp   temporary file holding the new content
+     * @param target file to replace
+     */
+    static void replace(File temp, File target) {
+        sync();
+        force(temp);
+        try {
+            Files.move(temp.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        force(target.getAbsoluteFile().getParentFile());
+    }
+
+    /**
+     * Syncs every file marked as written, and then each of their
+     * directories and the parents of created directories once.
+     */
+    static void sync() {
+        List<File> files, created;
+        synchronized (Durable.class) {
+            files = new ArrayList<>(WRITTEN);
+            created = new ArrayList<>(CREATED);
+            WRITTEN.clear();
+            CREATED.clear();
+        }
+        if (files.isEmpty() && created.isEmpty() || !enabled()) {
+            return;
+        }
+        Set<File> dirs = new LinkedHashSet<>();
+        for (File f : files) {
+            dirs.add(f.getAbsoluteFile().getParentFile());
+        }
+        for (File dir : created) {
+            dirs.add(dir.getAbsoluteFile());
+            dirs.add(dir.getAbsoluteFile().getParentFile());
+        }
+        Workers.forEach(files, Durable::force);
+        Workers.forEach(new ArrayList<>(dirs), Durable::force);
+    }
+
+    /**
+     * Returns the number of files and directories synced so far.
+     *
+     * @return number of syncs
+     */
+    static synchronized long syncs() {
+        return syncs;
+    }
+
+    /**
+     * Syncs the content of the specified file or directory to the disk.
+     * Files that no longer exist are skipped, and so are directories on
+     * systems that cannot sync them.
+     *
+     * @param f file or directory to sync
+     */
+    private static void force(File f) {
+        if (!enabled() || !f.exists()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            if (!f.isDirectory()) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        synchronized (Durable.class) {
+            syncs += 1;
+        }
+    }
+
+    /**
+     * Returns whether files are synced, as configured.
+     *
+     * @return false if syncing is turned off
+     */
+    private static boolean enabled() {
+        return !Config.get("fsync", "true").equals("false");
+    }
+}
@@ -0,0 +1,80 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Date;
+import java.util.HashMap;
+
+/**
+ * Performs a timing test comparing Java serialization of commits, used by
+ * earlier versions, with the binary format of {@link Commit}.
+ * <p>
+ * Usage: {@code java gitlet.FormatSpeedTest [FILES] [ROUNDS]}. It encodes and
+ * decodes a commit tracking FILES files ROUNDS times in each format, after
+ * as many rounds of warm-up, and reports sizes and throughput. Nothing is
+ * written to disk.
+ *
+ * @author Fei Pan
+ */
+public class FormatSpeedTest {
+    /**
+     * Runs the timing test. ARGS may give the number of tracked files and
+     * the number of rounds.
+     */
+    public static void main(String[] args) throws IOException, ClassNotFoundException {
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+        HashMap<File, String> tracked = new HashMap<>();
+        for (int i = 0; i < files; i += 1) {
+            tracked.put(new File("dir" + i % 10, "file" + i + ".txt"), Utils.sha1("file" + i));
+        }
+        Commit commit = new Commit("commit message", new Date(),
+                tracked, new String[]{Utils.sha1("parent")});
+
+        for (int pass = 0; pass < 2; pass += 1) {
+            boolean report = pass == 1;
+            long start = System.nanoTime();
+            byte[] serialized = null;
+            for (int i = 0; i < rounds; i += 1) {
+                serialized = Utils.serialize(commit);
+            }
+            double serializeTime = seconds(start);
+            start = System.nanoTime();
+            for (int i = 0; i < rounds; i += 1) {
+                new ObjectInputStream(new ByteArrayInputStream(serialized)).readObject();
+            }
+            double deserializeTime = seconds(start);
+
+            start = System.nanoTime();
+            byte[] encoded = null;
+            for (int i = 0; i < rounds; i += 1) {
+                encoded = commit.encode();
+            }
+            double encodeTime = seconds(start);
+            start = System.nanoTime();
+            for (int i = 0; i < rounds; i += 1) {
+                Commit.decode(encoded);
+            }
+            double decodeTime = seconds(start);
+
+            if (report) {
+                System.out.printf("Commit tracking %d files, %d rounds.%n", files, rounds);
+                System.out.printf("%-20s %10s %12s %12s%n", "format", "bytes", "write/s", "read/s");
+                System.out.printf("%-20s %10d %12.0f %12.0f%n", "Java serialization",
+                        serialized.length, rounds / serializeTime, rounds / deserializeTime);
+                System.out.printf("%-20s %10d %12.0f %12.0f%n", "binary",
+                        encoded.length, rounds / encodeTime, rounds / decodeTime);
+            }
+        }
+    }
+
+    /**
+     * Returns seconds elapsed since START, as given by System.nanoTime.
+     */
+    private static double seconds(long start) {
+        return (System.nanoTime() - start) / 1e9;
+    }
+}
@@ -1,16 +1,69 @@
 package gitlet;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.io.File;
+import java.nio.BufferUnderflowException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * The GitletObject class is intended to mimic the four types of objects in real git.
  * It guarantees that its subclasses are serializable and can be conveniently stored.
+ * <p>
+ * An object is stored as a {@link GitletObject#HEADER_LENGTH}-byte header
+ * followed by a payload whose format depends on the type of the object.
+ * The header consists of the magic bytes {@code 'g' 'l'}, a type byte and
+ * a byte naming the {@link Codec} the payload is compressed with. Payloads
+ * can be streamed, and blobs are read without Java serialization. Commits,
+ * trees and staging areas have compact binary payloads, see {@link Commit},
+ * {@link Tree} and {@link Staged}. Objects stored by earlier versions, which are plain
+ * Java-serialized objects with or without a header, can still be read.
  *
  * @author Fei Pan
  */
 public interface GitletObject extends Serializable {
+    /**
+     * Length of the header of an object stored with a header.
+     */
+    int HEADER_LENGTH = 4;
+    /**
+     * Type byte of a blob, whose payload is the content of the blob.
+     */
+    byte TYPE_BLOB = 'b';
+    /**
+     * Type byte of a blob stored as a delta against another blob.
+     */
+    byte TYPE_DELTA = 'd';
+    /**
+     * Type byte of an object whose payload is the object in Java serialization.
+     */
+    byte TYPE_SERIALIZED = 'j';
+    /**
+     * Type byte of a commit in the binary format, see {@link Commit}.
+     */
+    byte TYPE_COMMIT = 'c';
+    /**
+     * Type byte of a tree in the binary format, see {@link Tree}.
+     */
+    byte TYPE_TREE = 't';
+    /**
+     * Type byte of a staging area in the binary format, which was stored in
+     * the object store by earlier versions, see {@link Staged}.
+     */
+    byte TYPE_STAGED = 's';
+
     /**
      * Get SHA-1 value of the object.
      *
@@ -18,75 +71,400 @@ public interface GitletObject extends Serializable {
      */
     String sha1();
 
+    /**
+     * Returns a rough estimate of the memory the object takes in bytes,
+     * used to bound the size of the {@link ObjectCache}.
+     *
+     * @return estimated size in bytes
+     */
+    default long footprint() {
+        return 64;
+    }
+
     /**
      * Store the object to a path determined by its SHA-1 value,
-     * namely {@code <Repository.GITLET_DIR>/objects/<SHA-1[:2]>/<SHA-1[2:]>}.<br>
+     * namely {@code <Repository.GITLET_DIR>/objects/<SHA-1[:2]>/<SHA-1[2:]>},
+     * unless an object with the same SHA-1 value is already stored.<br>
      * Will return SHA-1 value of the object.
      *
      * @return SHA-1 value of the object
      */
     default String store() {
-        File target = getPath(sha1());
-        Utils.writeObject(target, this);
-        return sha1();
+        return store(sha1(), TYPE_SERIALIZED, Utils.serialize(this));
     }
 
     /**
-     * Gets the object with SHA-1 value s. If the specified file
-     * does not exist, return null.
+     * Stores an object with SHA-1 value s, the specified type and payload,
+     * unless an object with the same SHA-1 value is already stored.
+     *
+     * @param s       SHA-1 value of the object
+     * @param type    type byte of the object
+     * @param payload payload of the object
+     * @return SHA-1 value of the object
+     */
+    static String store(String s, byte type, byte[] payload) {
+        if (!exists(s)) {
+            try (OutputStream out = create(s, type)) {
+                out.write(payload);
+            } catch (IOException excp) {
+                getTempPath(s).delete();
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            install(s);
+        }
+        return s;
+    }
+
+    /**
+     * Starts writing the object with SHA-1 value s to a temporary file.
+     * The header is written with the current codec, see {@link Codec#current()},
+     * and the returned stream encodes the payload written to it. After the
+     * stream is closed, {@link GitletObject#install(String)} moves the
+     * temporary file into place.
+     *
+     * @param s    SHA-1 value of the object
+     * @param type type byte of the object
+     * @return a stream to write the payload to
+     * @throws IOException if the temporary file cannot be written
+     */
+    static OutputStream create(String s, byte type) throws IOException {
+        return create(s, type, Codec.current());
+    }
+
+    /**
+     * Like {@link GitletObject#create(String, byte)}, but with the specified codec.
+     *
+     * @param s     SHA-1 value of the object
+     * @param type  type byte of the object
+     * @param codec codec to encode the payload with
+     * @return a stream to write the payload to
+     * @throws IOException if the temporary file cannot be written
+     */
+    static OutputStream create(String s, byte type, Codec codec) throws IOException {
+        getTempPath(s).getParentFile().mkdirs();
+        OutputStream out = new BufferedOutputStream(
+                Files.newOutputStream(getTempPath(s).toPath()), Blob.CHUNK_SIZE);
+        out.write(new byte[]{'g', 'l', type, codec.id});
+        return codec.encode(out);
+    }
+
+    /**
+     * Moves the temporary file written through {@link GitletObject#create}
+     * to the path of the loose object with SHA-1 value s. The object is
+     * synced before the next ref is written, see {@link Durable}.
+     *
+     * @param s SHA-1 value of the object
+     */
+    static void install(String s) {
+        File target = getPath(s);
+        if (target.getParentFile().mkdirs()) {
+            Durable.created(target.getParentFile());
+        }
+        try {
+            Files.move(getTempPath(s).toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Durable.written(target);
+    }
+
+    /**
+     * Gets the temporary path an object is written to before it is installed.
+     *
+     * @param s SHA-1 value of the object
+     * @return the temporary path
+     */
+    static File getTempPath(String s) {
+        return Utils.join(Repository.GITLET_DIR, "objects", "tmp-" + s);
+    }
+
+    /**
+     * Returns true if and only if an object with SHA-1 value s is stored,
+     * either loose or in the pack.
      *
      * @param s SHA-1 value
-     * @return a gitlet object or null if it does not exist
-     * @see GitletObject#readAndDeleteUnused(String)
+     * @return true if the object exists
      */
-    static GitletObject read(String s) {
-        if (s == null) {
-            return null;
+    static boolean exists(String s) {
+        return getPath(s).exists() || Pack.contains(s);
+    }
+
+    /**
+     * Opens a stream of the stored bytes of the object with SHA-1 value s,
+     * header included. Returns null if the object does not exist.
+     *
+     * @param s SHA-1 value
+     * @return an input stream, or null
+     */
+    static InputStream open(String s) {
+        InputStream packed = Pack.open(s);
+        if (packed != null) {
+            return packed;
         }
         File f = getPath(s);
         if (!f.exists()) {
             return null;
         }
-        return Utils.readObject(f, GitletObject.class);
+        try {
+            return Files.newInputStream(f.toPath());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
     }
 
     /**
-     * Similar to {@link GitletObject#read} except deletes all Staged
-     * objects except the one .gitlet/STAGED points to.
+     * Opens a stream of the decoded payload of the object with SHA-1 value s,
+     * which must have been stored with a header. Returns null if the object
+     * does not exist.
      *
      * @param s SHA-1 value
-     * @return a gitlet object
-     * @see GitletObject#read(String)
+     * @return an input stream, or null
+     * @throws IOException if the object cannot be read
      */
-    static GitletObject readAndDeleteUnused(String s) {
-        GitletObject object = Utils.readObject(getPath(s), GitletObject.class);
-        String staged = Repository.getRef("STAGED");
-        for (String objectName : list()) {
-            if (!objectName.equals(staged) && read(objectName).getClass().equals(Staged.class)) {
-                delete(objectName);
+    static InputStream openPayload(String s) throws IOException {
+        InputStream in = open(s);
+        if (in == null) {
+            return null;
+        }
+        byte[] header = in.readNBytes(HEADER_LENGTH);
+        if (!hasHeader(header)) {
+            in.close();
+            throw new IOException("Object " + s + " has no header.");
+        }
+        return Codec.of(header[3]).decode(in);
+    }
+
+    /**
+     * Returns true if and only if the specified bytes, read from the start
+     * of a stored object, are a header.
+     *
+     * @param header bytes to check
+     * @return true if the bytes are a header
+     */
+    static boolean hasHeader(byte[] header) {
+        return header.length == HEADER_LENGTH && header[0] == 'g' && header[1] == 'l';
+    }
+
+    /**
+     * Rewrites the object with SHA-1 value s as a loose object encoded with
+     * the specified codec. Objects stored without a header are given one,
+     * and blobs serialized by earlier versions are rewritten as plain blobs.
+     * Nothing is written if the object is already loose and encoded that way.
+     *
+     * @param s     SHA-1 value
+     * @param codec codec to encode the payload with
+     */
+    static void recompress(String s, Codec codec) {
+        try (InputStream stored = open(s)) {
+            BufferedInputStream in = new BufferedInputStream(stored);
+            in.mark(HEADER_LENGTH);
+            byte[] header = in.readNBytes(HEADER_LENGTH);
+            byte type = TYPE_SERIALIZED;
+            boolean encoded = false;
+            if (hasHeader(header)) {
+                encoded = header[3] == codec.id && getPath(s).exists();
+                type = header[2];
+                if (encoded && type != TYPE_SERIALIZED) {
+                    return;
+                }
+            } else {
+                in.reset();
+            }
+            try (InputStream decoded = hasHeader(header) ? Codec.of(header[3]).decode(in) : in) {
+                InputStream payload = decoded;
+                if (type == TYPE_SERIALIZED) {
+                    byte[] serialized = payload.readAllBytes();
+                    Object object = new ObjectInputStream(
+                            new ByteArrayInputStream(serialized)).readObject();
+                    if (object instanceof Blob) {
+                        type = TYPE_BLOB;
+                        serialized = Blob.contentOf(s, Integer.MAX_VALUE);
+                    } else if (encoded) {
+                        return;
+                    }
+                    payload = new ByteArrayInputStream(serialized);
+                }
+                try (OutputStream out = create(s, type, codec)) {
+                    payload.transferTo(out);
+                }
+            }
+        } catch (IOException | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        install(s);
+    }
+
+    /**
+     * Gets the object with SHA-1 value s. The {@link ObjectCache} is looked
+     * up first, then the pack, and then loose objects. If the object does
+     * not exist, return null.
+     *
+     * @param s SHA-1 value
+     * @return a gitlet object or null if it does not exist
+     * @see Pack
+     */
+    static GitletObject read(String s) {
+        if (s == null || s.length() != Utils.UID_LENGTH) {
+            return null;
+        }
+        GitletObject object = ObjectCache.get(s);
+        if (object != null) {
+            return object;
+        }
+        try (InputStream stored = open(s)) {
+            if (stored == null) {
+                return null;
+            }
+            BufferedInputStream in = new BufferedInputStream(stored);
+            in.mark(HEADER_LENGTH);
+            byte[] header = in.readNBytes(HEADER_LENGTH);
+            if (hasHeader(header)) {
+                switch (header[2]) {
+                    case TYPE_BLOB:
+                    case TYPE_DELTA:
+                        object = Blob.stored(s, header[2] == TYPE_DELTA);
+                        break;
+                    case TYPE_COMMIT:
+                        object = Commit.decode(Codec.of(header[3]).decodeAll(in));
+                        break;
+                    case TYPE_TREE:
+                        object = Tree.decode(Codec.of(header[3]).decodeAll(in));
+                        break;
+                    case TYPE_STAGED:
+                        object = Staged.decode(Codec.of(header[3]).decodeAll(in));
+                        break;
+                    case TYPE_SERIALIZED:
+                        object = (GitletObject) new ObjectInputStream(new ByteArrayInputStream(
+                                Codec.of(header[3]).decodeAll(in))).readObject();
+                        break;
+                    default:
+                        throw Utils.error("Object %s has unknown type.", s);
+                }
+            } else {
+                in.reset();
+                object = (GitletObject) new ObjectInputStream(in).readObject();
             }
+        } catch (IOException | ClassCastException | ClassNotFoundException
+                 | BufferUnderflowException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
         }
+        if (object instanceof Commit) {
+            ((Commit) object).identify(s);
+        } else if (object instanceof Tree) {
+            ((Tree) object).identify(s);
+        } else if (object instanceof Blob) {
+            ((Blob) object).identify(s);
+        }
+        ObjectCache.put(s, object);
         return object;
     }
 
     /**
-     * Deletes the specified object.
+     * Returns true if and only if the stored object with SHA-1 value s can
+     * be read and still hashes to s. A blob hashes to the SHA-1 value of its
+     * content, with deltas resolved, a staging area stored by an earlier
+     * version to that of its serialized changes, and any other object to
+     * that of its payload, which for objects stored without a header is the
+     * whole file.
+     *
+     * @param s SHA-1 value of the object
+     * @return true if the object is intact
+     */
+    static boolean verify(String s) {
+        try (InputStream stored = open(s)) {
+            if (stored == null) {
+                return false;
+            }
+            BufferedInputStream in = new BufferedInputStream(stored);
+            in.mark(HEADER_LENGTH);
+            byte[] header = in.readNBytes(HEADER_LENGTH);
+            if (!hasHeader(header)) {
+                in.reset();
+                return verifySerialized(s, in.readAllBytes());
+            }
+            switch (header[2]) {
+                case TYPE_BLOB:
+                    MessageDigest md = Utils.sha1Digest();
+                    try (InputStream content = Codec.of(header[3]).decode(in)) {
+                        byte[] chunk = new byte[Blob.CHUNK_SIZE];
+                        for (int n = content.read(chunk); n >= 0; n = content.read(chunk)) {
+                            md.update(chunk, 0, n);
+                        }
+                    }
+                    return s.equals(Utils.toHex(md.digest()));
+                case TYPE_DELTA:
+                    return s.equals(Utils.sha1((Object) Blob.contentOf(s, Integer.MAX_VALUE)));
+                case TYPE_SERIALIZED:
+                    return verifySerialized(s, Codec.of(header[3]).decodeAll(in));
+                case TYPE_COMMIT:
+                case TYPE_TREE:
+                case TYPE_STAGED:
+                    return s.equals(Utils.sha1((Object) Codec.of(header[3]).decodeAll(in)));
+                default:
+                    return false;
+            }
+        } catch (IOException | RuntimeException | ClassNotFoundException excp) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns true if and only if the object with SHA-1 value s, serialized
+     * by an earlier version as PAYLOAD, hashes to s. A blob hashes to the
+     * SHA-1 value of its content, a staging area to that of its serialized
+     * changes, which is how earlier versions named it, and any other object
+     * to that of PAYLOAD.
+     */
+    private static boolean verifySerialized(String s, byte[] payload)
+            throws IOException, ClassNotFoundException {
+        Object object = new ObjectInputStream(new ByteArrayInputStream(payload)).readObject();
+        if (object instanceof Blob) {
+            payload = Blob.contentOf(s, Integer.MAX_VALUE);
+        } else if (object instanceof Staged) {
+            payload = Utils.serialize(((Staged) object).getChanges());
+        }
+        return s.equals(Utils.sha1((Object) payload));
+    }
+
+    /**
+     * Deletes the specified object. Objects in the pack are never deleted.
      *
      * @param s object to delete
      */
     static void delete(String s) {
+        ObjectCache.remove(s);
         getPath(s).delete();
     }
 
     /**
-     * Returns a list of SHA-1 value of all objects.
+     * Returns a list of SHA-1 value of all objects, packed or loose.
      *
      * @return a list of SHA-1 value of all objects
      */
     static String[] list() {
+        Set<String> result = new LinkedHashSet<>(Pack.list());
+        result.addAll(List.of(listLoose()));
+        return result.toArray(new String[0]);
+    }
+
+    /**
+     * Returns a list of SHA-1 value of all loose objects, i.e. objects
+     * that are not in the pack.
+     *
+     * @return a list of SHA-1 value of all loose objects
+     */
+    static String[] listLoose() {
         File objectDir = Utils.join(Repository.GITLET_DIR, "objects");
         ArrayList<String> result = new ArrayList<>();
-        for (String prefix : objectDir.list()) {
+        String[] prefixes = objectDir.list();
+        if (prefixes == null) {
+            return new String[0];
+        }
+        for (String prefix : prefixes) {
+            if (prefix.length() != 2) {
+                continue;
+            }
             for (String suffix : Utils.join(objectDir, prefix).list()) {
                 result.add(prefix + suffix);
             }
@@ -94,6 +472,20 @@ public interface GitletObject extends Serializable {
         return result.toArray(new String[0]);
     }
 
+    /**
+     * Moves all loose objects into the pack. The moved loose files
+     * and their emptied directories are deleted.
+     */
+    static void pack() {
+        List<String> names = List.of(listLoose());
+        Pack.add(names);
+        for (String objectName : names) {
+            File f = getPath(objectName);
+            f.delete();
+            f.getParentFile().delete();
+        }
+    }
+
     /**
      * Returns a list of all objects.
      *
@@ -108,31 +500,96 @@ public interface GitletObject extends Serializable {
     }
 
     /**
-     * Gets the path in which the object will be stored and creates necessary
-     * directory along the path.
+     * Gets the path in which the object will be stored as a loose object.
+     * Necessary directories are not created.
      *
      * @return the path in which the object stores
      */
     static File getPath(String fullName) {
         String prefix = fullName.substring(0, 2), suffix = fullName.substring(2);
-        File targetDir = Utils.join(Repository.GITLET_DIR, "objects", prefix);
-        targetDir.mkdirs();
-        return Utils.join(targetDir, suffix);
+        return Utils.join(Repository.GITLET_DIR, "objects", prefix, suffix);
+    }
+
+    /**
+     * Gets the name of the commit with the specified abbreviated name.
+     * Objects other than commits are ignored, so an abbreviation that also
+     * starts the names of blobs or trees still resolves. Return null if no
+     * commit matches. If more than one commit matches, exits with an error
+     * rather than picking one of them.
+     *
+     * @param commitName abbreviation of a commit name
+     * @return full commit name, or null if no commit matches the abbreviation
+     */
+    static String autocompleteCommit(String commitName) {
+        List<String> matches = new ArrayList<>();
+        for (String s : listPrefix(commitName)) {
+            if (isCommit(s)) {
+                matches.add(s);
+            }
+        }
+        if (matches.size() > 1) {
+            Utils.exit("Ambiguous id %s, which matches %d commits.", commitName, matches.size());
+        }
+        return matches.isEmpty() ? null : matches.get(0);
     }
 
     /**
-     * Gets corresponding object name to the specified abbreviation.
-     * Return null if no matched object is found.
+     * Returns true if and only if the object with SHA-1 value s is a commit.
+     * Only the header is read, unless the object has none or was serialized,
+     * as by earlier versions, in which case it is read as a whole.
      *
-     * @param objectName abbreviation of object name
-     * @return full object name, or null if no object matches the abbreviation
+     * @param s SHA-1 value
+     * @return true if the object is a commit
      */
-    static String autocomplete(String objectName) {
-        for (GitletObject object : listObjects()) {
-            if (object.sha1().startsWith(objectName)) {
-                return object.sha1();
+    static boolean isCommit(String s) {
+        byte[] header;
+        try (InputStream in = open(s)) {
+            if (in == null) {
+                return false;
+            }
+            header = in.readNBytes(HEADER_LENGTH);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (hasHeader(header) && header[2] != TYPE_SERIALIZED) {
+            return header[2] == TYPE_COMMIT;
+        }
+        return read(s) instanceof Commit;
+    }
+
+    /**
+     * Returns SHA-1 values of all objects starting with the specified prefix.
+     * Only object names are looked at: the fan-out directory of the prefix
+     * and the matching range of the pack index. Prefixes shorter than two
+     * characters fall back to listing all object names.
+     *
+     * @param prefix prefix of SHA-1 values
+     * @return a list of matching SHA-1 values without duplicates
+     */
+    static List<String> listPrefix(String prefix) {
+        if (prefix.isEmpty() || prefix.length() > Utils.UID_LENGTH
+                || !prefix.matches("[0-9a-f]+")) {
+            return new ArrayList<>();
+        }
+        Set<String> result = new LinkedHashSet<>();
+        if (prefix.length() < 2) {
+            for (String objectName : list()) {
+                if (objectName.startsWith(prefix)) {
+                    result.add(objectName);
+                }
+            }
+            return new ArrayList<>(result);
+        }
+        result.addAll(Pack.listPrefix(prefix));
+        String dirName = prefix.substring(0, 2), rest = prefix.substring(2);
+        String[] suffixes = Utils.join(Repository.GITLET_DIR, "objects", dirName).list();
+        if (suffixes != null) {
+            for (String suffix : suffixes) {
+                if (suffix.startsWith(rest)) {
+                    result.add(dirName + suffix);
+                }
             }
         }
-        return null;
+        return new ArrayList<>(result);
     }
 }
@@ -0,0 +1,147 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Merges two versions of a text that were both derived from a common base
+ * version, line by line, as in diff3.
+ * <p>
+ * Both versions are compared with the base, see {@link Diff}. Changes of
+ * the two versions whose regions of the base overlap or touch form one
+ * chunk; any other change forms a chunk of its own. A chunk changed in
+ * only one version, or changed the same way in both, is taken as it is.
+ * Otherwise the chunk is a conflict, and both sides are written between
+ * markers in the format of {@link Blob#conflict(String, String)}, so only
+ * the overlapping lines have to be resolved by hand. Lines are handled as
+ * bytes, so any text merges back byte for byte.
+ *
+ * @author Fei Pan
+ */
+public class LineMerge {
+    /**
+     * The merged text.
+     */
+    private final byte[] content;
+    /**
+     * Number of conflicting chunks in the merged text.
+     */
+    private final int conflicts;
+
+    /**
+     * Creates a LineMerge.
+     *
+     * @param content   the merged text
+     * @param conflicts number of conflicting chunks
+     */
+    private LineMerge(byte[] content, int conflicts) {
+        this.content = content;
+        this.conflicts = conflicts;
+    }
+
+    /**
+     * Merges the current and the given versions of a text derived from
+     * the base version.
+     *
+     * @param base    the base version
+     * @param current the version of the current branch
+     * @param given   the version of the given branch
+     * @return the merge
+     */
+    static LineMerge of(byte[] base, byte[] current, byte[] given) {
+        List<String> o = Diff.lines(base, StandardCharsets.ISO_8859_1),
+                a = Diff.lines(current, StandardCharsets.ISO_8859_1),
+                b = Diff.lines(given, StandardCharsets.ISO_8859_1);
+        List<Diff.Edit> ours = Diff.diff(o, a), theirs = Diff.diff(o, b);
+
+        StringBuilder out = new StringBuilder();
+        int conflicts = 0, i = 0, j = 0, copied = 0;
+        while (i < ours.size() || j < theirs.size()) {
+            boolean oursFirst = j == theirs.size()
+                    || (i < ours.size() && ours.get(i).aStart <= theirs.get(j).aStart);
+            int start = oursFirst ? ours.get(i).aStart : theirs.get(j).aStart,
+                    end = start, iStart = i, jStart = j;
+            while (true) {
+                if (i < ours.size() && ours.get(i).aStart <= end) {
+                    end = Math.max(end, ours.get(i).aEnd);
+                    i += 1;
+                } else if (j < theirs.size() && theirs.get(j).aStart <= end) {
+                    end = Math.max(end, theirs.get(j).aEnd);
+                    j += 1;
+                } else {
+                    break;
+                }
+            }
+            append(out, o, copied, start);
+            copied = end;
+
+            List<String> mine = side(o, a, ours.subList(iStart, i), start, end),
+                    yours = side(o, b, theirs.subList(jStart, j), start, end);
+            if (jStart == j || mine.equals(yours)) {
+                append(out, mine, 0, mine.size());
+            } else if (iStart == i) {
+                append(out, yours, 0, yours.size());
+            } else {
+                conflicts += 1;
+                out.append("<<<<<<< HEAD\n");
+                appendLines(out, mine);
+                out.append("=======\n");
+                appendLines(out, yours);
+                out.append(">>>>>>>\n");
+            }
+        }
+        append(out, o, copied, o.size());
+        return new LineMerge(out.toString().getBytes(StandardCharsets.ISO_8859_1), conflicts);
+    }
+
+    /**
+     * Returns the lines of version X replacing base[start, end), given the
+     * EDITS from the base O to X that fall in that region.
+     */
+    private static List<String> side(List<String> o, List<String> x, List<Diff.Edit> edits,
+                                     int start, int end) {
+        if (edits.isEmpty()) {
+            return o.subList(start, end);
+        }
+        Diff.Edit first = edits.get(0), last = edits.get(edits.size() - 1);
+        return x.subList(first.bStart - (first.aStart - start), last.bEnd + (end - last.aEnd));
+    }
+
+    /**
+     * Appends LINES[from, to) to OUT.
+     */
+    private static void append(StringBuilder out, List<String> lines, int from, int to) {
+        for (String line : lines.subList(from, to)) {
+            out.append(line);
+        }
+    }
+
+    /**
+     * Appends LINES to OUT between conflict markers, ending the last line
+     * with a newline so that the next marker starts a line.
+     */
+    private static void appendLines(StringBuilder out, List<String> lines) {
+        append(out, lines, 0, lines.size());
+        if (!lines.isEmpty() && !lines.get(lines.size() - 1).endsWith("\n")) {
+            out.append('\n');
+        }
+    }
+
+    /**
+     * Returns the merged text.
+     *
+     * @return the content
+     */
+    byte[] content() {
+        return content;
+    }
+
+    /**
+     * Returns the number of conflicting chunks in the merged text.
+     *
+     * @return number of conflicts
+     */
+    int conflicts() {
+        return conflicts;
+    }
+}
@@ -0,0 +1,60 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Performs a timing test of merging large texts line by line, see
+ * {@link LineMerge}.
+ * <p>
+ * Usage: {@code java gitlet.LineMergeSpeedTest [LINES] [CHANGES] [ROUNDS]}.
+ * It builds a base text of LINES random lines and two versions of it, each
+ * changing CHANGES lines at least one line away from those changed by the
+ * other, so that they merge without conflicts, and merges them ROUNDS
+ * times, after as many rounds of warm-up. It reports the time of a merge and
+ * the throughput in megabytes of base text per second. Nothing is written to
+ * disk.
+ *
+ * @author Fei Pan
+ */
+public class LineMergeSpeedTest {
+    /**
+     * Runs the timing test. ARGS may give the number of lines, the number
+     * of changes in each version and the number of rounds.
+     */
+    public static void main(String[] args) {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        int changes = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        Random random = new Random(61);
+        String[] base = new String[lines];
+        for (int i = 0; i < lines; i += 1) {
+            base[i] = Long.toHexString(random.nextLong()) + " line " + i + "\n";
+        }
+        String[] current = base.clone(), given = base.clone();
+        for (int i = 0; i < changes; i += 1) {
+            int line = random.nextInt(lines / 4) * 4;
+            current[line] = "current " + i + "\n";
+            given[line + 2] = "given " + i + "\n";
+        }
+        byte[] o = String.join("", base).getBytes(StandardCharsets.UTF_8),
+                a = String.join("", current).getBytes(StandardCharsets.UTF_8),
+                b = String.join("", given).getBytes(StandardCharsets.UTF_8);
+
+        System.out.printf("Base of %d lines, %d bytes; %d changes in each version.%n",
+                lines, o.length, changes);
+        for (int pass = 0; pass < 2; pass += 1) {
+            long start = System.nanoTime();
+            int conflicts = 0;
+            for (int i = 0; i < rounds; i += 1) {
+                conflicts = LineMerge.of(o, a, b).conflicts();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9 / rounds;
+            if (pass == 1) {
+                System.out.printf("%-12s %10.3f s %10.1f MB/s %8d conflicts%n", "merge",
+                        seconds, o.length / seconds / 1e6, conflicts);
+            }
+        }
+    }
+}
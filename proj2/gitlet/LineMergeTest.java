@@ -0,0 +1,64 @@
+package gitlet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Used to test functionality of {@link LineMerge}.
+ *
+ * @author Fei Pan
+ */
+public class LineMergeTest {
+    /**
+     * Returns the merge of the texts BASE, CURRENT and GIVEN.
+     */
+    private static LineMerge merge(String base, String current, String given) {
+        return LineMerge.of(base.getBytes(StandardCharsets.UTF_8),
+                current.getBytes(StandardCharsets.UTF_8), given.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the content of MERGE as a string.
+     */
+    private static String content(LineMerge merge) {
+        return new String(merge.content(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Check that changes to different lines are both kept, and that the
+     * same change in both versions is kept once.
+     */
+    @Test
+    public void testCleanMerge() {
+        String base = "a\nb\nc\nd\ne\n";
+        LineMerge merge = merge(base, "A\nb\nc\nd\ne\n", "a\nb\nc\nd\nE\nf\n");
+        Assert.assertEquals(0, merge.conflicts());
+        Assert.assertEquals("A\nb\nc\nd\nE\nf\n", content(merge));
+
+        merge = merge(base, "a\nb\nC\nd\ne\n", "a\nb\nC\nd\ne\n");
+        Assert.assertEquals(0, merge.conflicts());
+        Assert.assertEquals("a\nb\nC\nd\ne\n", content(merge));
+
+        merge = merge(base, "a\nb\nc\nd\ne\n", "a\nc\nd\u00e9\ne\n");
+        Assert.assertEquals(0, merge.conflicts());
+        Assert.assertEquals("a\nc\nd\u00e9\ne\n", content(merge));
+    }
+
+    /**
+     * Check that only overlapping changes are marked as conflicts.
+     */
+    @Test
+    public void testConflict() {
+        LineMerge merge = merge("a\nb\nc\nd\ne\nf\ng\n", "A\nb\nc\nd\ne\nF\ng\n",
+                "a\nb\nc\nd\ne\nG\ng\n");
+        Assert.assertEquals(1, merge.conflicts());
+        Assert.assertEquals("A\nb\nc\nd\ne\n<<<<<<< HEAD\nF\n=======\nG\n>>>>>>>\ng\n",
+                content(merge));
+
+        merge = merge("", "x", "y\n");
+        Assert.assertEquals(1, merge.conflicts());
+        Assert.assertEquals("<<<<<<< HEAD\nx\n=======\ny\n>>>>>>>\n", content(merge));
+    }
+}
@@ -1,5 +1,11 @@
 package gitlet;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+
 /**
  * Driver class for Gitlet, a subset of the Git version-control system.
  *
@@ -35,6 +41,20 @@ public class Main {
         checkArgs(args, new int[]{number});
     }
 
+    /**
+     * Check whether there are at least the specified number of arguments
+     * following the first argument.
+     *
+     * @param args    array of arguments
+     * @param minimum least number allowed
+     * @see Main#checkArgs(String[], int[])
+     */
+    private static void checkMinArgs(String[] args, int minimum) {
+        if (args.length < minimum + 1) {
+            Utils.exit("Incorrect operands.");
+        }
+    }
+
     /**
      * Check whether an argument is as expected.
      *
@@ -47,11 +67,85 @@ public class Main {
         }
     }
 
+    /**
+     * Runs {@code log [-n N] [--since DATE] [--oneline]}, see
+     * {@link Repository#log(int, long, boolean)}. DATE is a local date such
+     * as {@code 2024-01-31}, optionally followed by a time of day such as
+     * {@code T12:00} or {@code T12:00:30}.
+     *
+     * @param args array of arguments
+     */
+    private static void log(String[] args) {
+        int limit = Integer.MAX_VALUE;
+        long since = Long.MIN_VALUE;
+        boolean oneline = false;
+        for (int i = 1; i < args.length; i += 1) {
+            if (args[i].equals("--oneline")) {
+                oneline = true;
+                continue;
+            }
+            checkMinArgs(args, i + 1);
+            if (args[i].equals("-n") && args[i + 1].matches("[0-9]{1,9}")) {
+                limit = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--since")) {
+                since = parseDate(args[i + 1]);
+            } else {
+                Utils.exit("Incorrect operands.");
+            }
+            i += 1;
+        }
+        Repository.log(limit, since, oneline);
+    }
+
+    /**
+     * Returns the specified local date, optionally with a time of day, in
+     * milliseconds, or ends the command if it is not a date.
+     *
+     * @param date date to parse
+     * @return the date in milliseconds
+     */
+    private static long parseDate(String date) {
+        try {
+            LocalDateTime time = date.contains("T") ? LocalDateTime.parse(date)
+                    : LocalDate.parse(date).atStartOfDay();
+            return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException excp) {
+            Utils.exit("Incorrect operands.");
+            return 0;
+        }
+    }
+
     /**
      * Usage: java gitlet.Main ARGS, where ARGS contains
      * <COMMAND> <OPERAND1> <OPERAND2> ...
      */
     public static void main(String[] args) {
+        run(args);
+    }
+
+    /**
+     * Runs the command given by ARGS, as {@link Main#main(String[])} does,
+     * and returns when it is done or has ended with a message. Statistics
+     * of the {@link ObjectCache} are printed to standard error if the
+     * {@code cache.stats} configuration key is {@code true}.
+     */
+    static void run(String[] args) {
+        try {
+            dispatch(args);
+        } catch (Utils.Exit excp) {
+            /* The message has been printed. */
+        }
+        Durable.sync();
+        if (Config.get("cache.stats", "false").equals("true")) {
+            System.err.println(ObjectCache.stats());
+        }
+        StatCache.save();
+    }
+
+    /**
+     * Checks the arguments ARGS and runs the command they give.
+     */
+    private static void dispatch(String[] args) {
         if (args.length == 0) {
             Utils.exit("Please enter a command.");
         }
@@ -68,8 +162,8 @@ public class Main {
                 Repository.init();
                 break;
             case "add":
-                checkArgs(args, 1);
-                Repository.add(args[1]);
+                checkMinArgs(args, 1);
+                Repository.add(Arrays.asList(args).subList(1, args.length));
                 break;
             case "commit":
                 checkArgs(args, 1);
@@ -80,8 +174,7 @@ public class Main {
                 Repository.rm(args[1]);
                 break;
             case "log":
-                checkArgs(args, 0);
-                Repository.log();
+                log(args);
                 break;
             case "global-log":
                 checkArgs(args, 0);
@@ -91,10 +184,50 @@ public class Main {
                 checkArgs(args, 1);
                 Repository.find(args[1]);
                 break;
+            case "reindex":
+                checkArgs(args, 0);
+                Repository.reindex();
+                break;
+            case "migrate":
+                checkArgs(args, 0);
+                Repository.migrate();
+                break;
+            case "pack":
+                checkArgs(args, 0);
+                Repository.pack();
+                break;
+            case "verify":
+                checkArgs(args, 0);
+                Repository.verify();
+                break;
+            case "gc":
+                checkArgs(args, new int[]{0, 1});
+                if (args.length == 2) {
+                    checkArg(args[1], "--dry-run");
+                }
+                Repository.gc(args.length == 2);
+                break;
+            case "recompress":
+                checkArgs(args, 0);
+                Repository.recompress();
+                break;
+            case "config":
+                checkArgs(args, new int[]{1, 2});
+                if (args.length == 2) {
+                    Repository.config(args[1]);
+                } else {
+                    Repository.config(args[1], args[2]);
+                }
+                break;
             case "status":
                 checkArgs(args, 0);
                 Repository.status();
                 break;
+            case "diff":
+                checkArgs(args, new int[]{0, 1, 2});
+                Repository.diff(args.length > 1 ? args[1] : null,
+                        args.length > 2 ? args[2] : null);
+                break;
             case "checkout":
                 checkArgs(args, new int[]{1, 2, 3});
                 if (args.length == 2)
@@ -126,6 +259,15 @@ public class Main {
                 checkArgs(args, 1);
                 Repository.merge(args[1]);
                 break;
+            case "daemon":
+                checkArgs(args, new int[]{0, 1});
+                if (args.length == 1) {
+                    Daemon.serve();
+                } else {
+                    checkArg(args[1], "stop");
+                    Daemon.stop();
+                }
+                break;
             default:
                 Utils.exit("No command with that name exists.");
         }
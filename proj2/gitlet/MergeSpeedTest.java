@@ -0,0 +1,111 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Performs a timing test of finding the split point of a merge on a deep
+ * history, which hashes and compares commits many times.
+ * <p>
+ * Usage: {@code java gitlet.MergeSpeedTest [DEPTH] [FILES]}, run in an empty
+ * directory. It creates a history of DEPTH commits each tracking FILES files,
+ * plus two short branches, in a fresh .gitlet directory.
+ *
+ * @author Fei Pan
+ */
+public class MergeSpeedTest {
+    /**
+     * Number of commits on each of the two branches.
+     */
+    private static final int BRANCH_LENGTH = 5;
+
+    /**
+     * Runs the timing test. ARGS may give the depth of the history and
+     * the number of tracked files.
+     */
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int files = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        if (Repository.GITLET_DIR.exists()) {
+            Utils.exit("Run this in a directory without a .gitlet directory.");
+        }
+        Repository.GITLET_REF_DIR.mkdirs();
+
+        Commit tip = buildHistory(depth, files);
+        Commit a = tip, b = tip;
+        for (int i = 0; i < BRANCH_LENGTH; i += 1) {
+            a = next(a, "a" + i, files);
+            b = next(b, "b" + i, files);
+        }
+        String aName = a.sha1(), bName = b.sha1();
+
+        long start = System.nanoTime();
+        Commit split = Commit.lowestCommonAncestor((Commit) GitletObject.read(aName),
+                (Commit) GitletObject.read(bName));
+        double lcaTime = seconds(start);
+        assert split.equals(tip);
+
+        Set<Commit> ancestorsA = Commit.ancestors((Commit) GitletObject.read(aName));
+        Set<Commit> ancestorsB = Commit.ancestors((Commit) GitletObject.read(bName));
+        start = System.nanoTime();
+        Set<Commit> common = new HashSet<>(ancestorsA);
+        common.retainAll(ancestorsB);
+        double cachedTime = seconds(start);
+
+        start = System.nanoTime();
+        for (Commit c : ancestorsA) {
+            Utils.sha1((Object) c.encode());
+            Utils.sha1((Object) c.encode());
+        }
+        double uncachedTime = seconds(start);
+
+        System.out.printf("History of %d commits tracking %d files each.%n", depth, files);
+        System.out.printf("lowestCommonAncestor using the commit graph: %.3f s%n", lcaTime);
+        System.out.printf("Intersecting ancestor sets with cached SHA-1 values: %.3f s%n",
+                cachedTime);
+        System.out.printf("Same intersection re-encoding on every hashCode: %.3f s%n",
+                uncachedTime);
+    }
+
+    /**
+     * Returns seconds elapsed since START, as given by System.nanoTime.
+     */
+    private static double seconds(long start) {
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    /**
+     * Stores a linear history of DEPTH commits, each tracking FILES files,
+     * and returns its last commit.
+     */
+    private static Commit buildHistory(int depth, int files) {
+        Commit commit = new Commit();
+        commit.store();
+        CommitGraph.record(commit);
+        for (int i = 0; i < depth; i += 1) {
+            commit = next(commit, "commit " + i, files);
+        }
+        return commit;
+    }
+
+    /**
+     * Stores and returns a child of PARENT with message MSG that changes
+     * one of FILES files.
+     */
+    private static Commit next(Commit parent, String msg, int files) {
+        HashMap<File, String> tracked = new HashMap<>(parent.getTracked());
+        if (tracked.isEmpty()) {
+            for (int i = 0; i < files; i += 1) {
+                tracked.put(new File("file" + i), Utils.sha1("file" + i));
+            }
+        }
+        tracked.put(new File("file" + Math.floorMod(msg.hashCode(), files)), Utils.sha1(msg));
+        Commit commit = new Commit(msg, new Date(), tracked, new String[]{parent.sha1()});
+        commit.store();
+        CommitGraph.record(commit);
+        return commit;
+    }
+}
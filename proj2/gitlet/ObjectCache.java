@@ -0,0 +1,211 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Caches objects read by {@link GitletObject#read(String)}, so that an
+ * object read many times in one command, or in many commands served by
+ * a {@link Daemon}, is only read and decoded once.
+ * <p>
+ * Objects are keyed by their SHA-1 value and never change, so cached
+ * objects only have to be dropped when the objects are deleted. The least
+ * recently used objects are evicted once the estimated size of the cached
+ * objects, see {@link GitletObject#footprint()}, exceeds the number of bytes
+ * given by the {@code cache.size} configuration key, see {@link Config}.
+ * The size of an object is taken when it is cached and remembered, and
+ * taken again when an object such as a commit grows while cached, see
+ * {@link Commit#getTracked()}, so that the cache stays within its size.
+ * Staging areas are never cached, as they can be changed.
+ *
+ * @author Fei Pan
+ */
+public class ObjectCache {
+    /**
+     * Default size of the cache in bytes.
+     */
+    static final long DEFAULT_SIZE = 64L << 20;
+
+    /**
+     * Cached objects by SHA-1 value, least recently used first.
+     */
+    private static final LinkedHashMap<String, Entry> OBJECTS =
+            new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * Estimated size of the cached objects in bytes.
+     */
+    private static long size;
+    /**
+     * Number of lookups that found the object.
+     */
+    private static long hits;
+    /**
+     * Number of lookups that did not find the object.
+     */
+    private static long misses;
+
+    /**
+     * Returns the cached object with the specified SHA-1 value.
+     *
+     * @param s SHA-1 value of the object
+     * @return the object, or null if it is not cached
+     */
+    static synchronized GitletObject get(String s) {
+        Entry entry = OBJECTS.get(s);
+        if (entry == null) {
+            misses += 1;
+            return null;
+        }
+        hits += 1;
+        return entry.object;
+    }
+
+    /**
+     * Caches the specified object read from the object store, evicting
+     * the least recently used objects if the cache is full.
+     *
+     * @param s      SHA-1 value of the object
+     * @param object the object
+     */
+    static synchronized void put(String s, GitletObject object) {
+        if (object instanceof Staged) {
+            return;
+        }
+        long capacity = capacity();
+        long footprint = object.footprint();
+        if (footprint > capacity) {
+            return;
+        }
+        Entry previous = OBJECTS.put(s, new Entry(object, footprint));
+        if (previous != null) {
+            size -= previous.footprint;
+        }
+        size += footprint;
+        evict(capacity);
+    }
+
+    /**
+     * Estimates the size of the specified cached object again, after it has
+     * grown, and evicts the least recently used objects if the cache is full.
+     * Nothing is done if the object is not cached.
+     *
+     * @param s      SHA-1 value of the object
+     * @param object the object
+     */
+    static synchronized void resize(String s, GitletObject object) {
+        Entry entry = OBJECTS.get(s);
+        if (entry == null || entry.object != object) {
+            return;
+        }
+        long footprint = object.footprint();
+        size += footprint - entry.footprint;
+        entry.footprint = footprint;
+        evict(capacity());
+    }
+
+    /**
+     * Drops the object with the specified SHA-1 value, which has been
+     * deleted, from the cache.
+     *
+     * @param s SHA-1 value of the object
+     */
+    static synchronized void remove(String s) {
+        Entry entry = OBJECTS.remove(s);
+        if (entry != null) {
+            size -= entry.footprint;
+        }
+    }
+
+    /**
+     * Drops all objects from the cache.
+     */
+    static synchronized void clear() {
+        OBJECTS.clear();
+        size = 0;
+    }
+
+    /**
+     * Returns the estimated size of the cached objects, as accounted when
+     * they were cached or last grew.
+     *
+     * @return size in bytes
+     */
+    static synchronized long size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of lookups that found the object.
+     *
+     * @return number of hits
+     */
+    static synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups that did not find the object.
+     *
+     * @return number of misses
+     */
+    static synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * Returns a one-line summary of the cache for diagnostics.
+     *
+     * @return hits, misses, number of objects and estimated size in bytes
+     */
+    static synchronized String stats() {
+        return String.format("object cache: %d hits, %d misses, %d objects, %d bytes",
+                hits, misses, OBJECTS.size(), size);
+    }
+
+    /**
+     * Evicts the least recently used objects until the cache is within
+     * CAPACITY bytes.
+     */
+    private static void evict(long capacity) {
+        Iterator<Entry> eldest = OBJECTS.values().iterator();
+        while (size > capacity) {
+            size -= eldest.next().footprint;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Returns the size of the cache in bytes, as configured.
+     *
+     * @return the capacity
+     */
+    private static long capacity() {
+        String value = Config.get("cache.size", null);
+        return value == null ? DEFAULT_SIZE : Long.parseLong(value);
+    }
+
+    /**
+     * A cached object with its estimated size when it was cached or last grew.
+     */
+    private static class Entry {
+        /**
+         * The object.
+         */
+        private final GitletObject object;
+        /**
+         * Estimated size of the object when it was cached or last grew.
+         */
+        private long footprint;
+
+        /**
+         * Creates an Entry.
+         *
+         * @param object    the object
+         * @param footprint its estimated size
+         */
+        Entry(GitletObject object, long footprint) {
+            this.object = object;
+            this.footprint = footprint;
+        }
+    }
+}
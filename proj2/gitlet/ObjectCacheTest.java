@@ -0,0 +1,122 @@
+package gitlet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+
+/**
+ * Used to test functionality of {@link ObjectCache}.
+ *
+ * @author Fei Pan
+ */
+public class ObjectCacheTest {
+    /**
+     * Size of the blobs cached by the tests.
+     */
+    private static final int BLOB_SIZE = 1 << 20;
+
+    /**
+     * Returns a blob of BLOB_SIZE bytes, all equal to B.
+     */
+    private static Blob blob(int b) {
+        byte[] data = new byte[BLOB_SIZE];
+        Arrays.fill(data, (byte) b);
+        return new Blob(data);
+    }
+
+    /**
+     * Check whether lookups are counted, and whether the least recently
+     * used objects are evicted once the cache is full.
+     */
+    @Test
+    public void testEviction() {
+        int count = (int) (ObjectCache.DEFAULT_SIZE / BLOB_SIZE) + 8;
+        Blob[] blobs = new Blob[count];
+        for (int i = 0; i < count; i += 1) {
+            blobs[i] = blob(i);
+            ObjectCache.put(blobs[i].sha1(), blobs[i]);
+            ObjectCache.get(blobs[0].sha1());
+        }
+
+        long hits = ObjectCache.hits(), misses = ObjectCache.misses();
+        Assert.assertSame(blobs[0], ObjectCache.get(blobs[0].sha1()));
+        Assert.assertNull(ObjectCache.get(blobs[1].sha1()));
+        Assert.assertSame(blobs[count - 1], ObjectCache.get(blobs[count - 1].sha1()));
+        Assert.assertEquals(hits + 2, ObjectCache.hits());
+        Assert.assertEquals(misses + 1, ObjectCache.misses());
+
+        ObjectCache.remove(blobs[0].sha1());
+        Assert.assertNull(ObjectCache.get(blobs[0].sha1()));
+    }
+
+    /**
+     * Check whether a commit that grew while cached, as its files were read
+     * from its tree, is accounted at its new size, and whether the size of
+     * the cache returns to 0 when it is dropped.
+     */
+    @Test
+    public void testGrowingCommit() {
+        HashMap<File, String> tracked = new HashMap<>();
+        for (int i = 0; i < 100; i += 1) {
+            tracked.put(new File("file" + i + ".txt"), Utils.sha1("file" + i));
+        }
+        Commit commit = new Commit("grows", new Date(4000L), tracked, new String[0]);
+        commit.store();
+
+        ObjectCache.clear();
+        Commit read = (Commit) GitletObject.read(commit.sha1());
+        long before = read.footprint();
+        Assert.assertEquals(100, read.getTracked().size());
+        Assert.assertTrue(read.footprint() > before);
+        ObjectCache.remove(read.getTree());
+        Assert.assertEquals(read.footprint(), ObjectCache.size());
+        ObjectCache.remove(commit.sha1());
+        Assert.assertEquals(0, ObjectCache.size());
+    }
+
+    /**
+     * Check whether the cache stays within its size when a cached commit
+     * grows, evicting the least recently used objects.
+     */
+    @Test
+    public void testBoundAfterGrowth() {
+        HashMap<File, String> tracked = new HashMap<>();
+        for (int i = 0; i < 20000; i += 1) {
+            tracked.put(new File("file" + i + ".txt"), Utils.sha1("file" + i));
+        }
+        Commit commit = new Commit("bounded", new Date(6000L), tracked, new String[0]);
+        commit.store();
+
+        ObjectCache.clear();
+        int count = (int) (ObjectCache.DEFAULT_SIZE / BLOB_SIZE) - 1;
+        Blob[] blobs = new Blob[count];
+        for (int i = 0; i < count; i += 1) {
+            blobs[i] = blob(i);
+            ObjectCache.put(blobs[i].sha1(), blobs[i]);
+        }
+        Commit read = (Commit) GitletObject.read(commit.sha1());
+        Assert.assertEquals(20000, read.getTracked().size());
+
+        long size = 0;
+        for (String s : new String[]{commit.sha1(), read.getTree()}) {
+            GitletObject object = ObjectCache.get(s);
+            size += object == null ? 0 : object.footprint();
+        }
+        int evicted = 0;
+        for (Blob b : blobs) {
+            if (ObjectCache.get(b.sha1()) == null) {
+                evicted += 1;
+            } else {
+                size += b.footprint();
+            }
+        }
+        Assert.assertTrue(evicted > 0);
+        Assert.assertEquals(size, ObjectCache.size());
+        Assert.assertTrue(ObjectCache.size() <= ObjectCache.DEFAULT_SIZE);
+        ObjectCache.clear();
+    }
+}
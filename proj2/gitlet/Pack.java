@@ -0,0 +1,441 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Pack stores many gitlet objects in a single file.
+ * <p>
+ * Objects are kept in a pack file in {@code <Repository.GITLET_DIR>/objects/pack},
+ * one object after another. They are located through {@code pack.idx}, which
+ * starts with {@link Pack#MAGIC} and the 8-byte generation of the pack file,
+ * followed by a table of fixed-width entries sorted by SHA-1 value. Each entry
+ * consists of the 20-byte SHA-1 value of an object, followed by the offset and
+ * the length of the object in the pack file, both as 8-byte integers. The
+ * index is memory-mapped and searched with binary search, so locating an
+ * object takes no I/O other than reading the object itself.
+ * <p>
+ * The pack file of generation 0 is {@code pack.dat}, and that of generation
+ * N is {@code pack-N.dat}. An index without the header, as written by earlier
+ * versions, is of generation 0. Objects are only ever appended to a pack
+ * file, and the index is replaced atomically afterwards, see {@link Durable}.
+ * Removing objects writes a pack file of the next generation, so replacing
+ * the index is the single point at which the new pack file takes effect; a
+ * crash before leaves the old pack and index intact, and the old pack file
+ * is only deleted afterwards.
+ *
+ * @author Fei Pan
+ */
+public class Pack {
+    /**
+     * The directory containing the pack file and its index.
+     */
+    static final File PACK_DIR = Utils.join(Repository.GITLET_DIR, "objects", "pack");
+    /**
+     * The pack file of generation 0.
+     */
+    static final File PACK_FILE = Utils.join(PACK_DIR, "pack.dat");
+    /**
+     * The index file of the pack.
+     */
+    static final File INDEX_FILE = Utils.join(PACK_DIR, "pack.idx");
+    /**
+     * Length of a SHA-1 value in bytes.
+     */
+    private static final int SHA1_BYTES = Utils.UID_LENGTH / 2;
+    /**
+     * Length of an entry of the index.
+     */
+    private static final int ENTRY_LENGTH = SHA1_BYTES + 16;
+    /**
+     * Marks an index that starts with the generation of its pack file.
+     */
+    private static final byte[] MAGIC = {'G', 'L', 'T', 'P', 'A', 'C', 'K', 1};
+    /**
+     * Length of the header of the index.
+     */
+    private static final int HEADER_LENGTH = MAGIC.length + 8;
+
+    /**
+     * The entries of the memory-mapped index, or null if it has not been
+     * mapped yet.
+     */
+    private static volatile ByteBuffer index;
+    /**
+     * Generation of the pack file named by the index.
+     */
+    private static volatile long generation;
+
+    /**
+     * Returns the memory-mapped index. Returns an empty buffer if
+     * there is no pack.
+     *
+     * @return the index
+     */
+    private static ByteBuffer index() {
+        if (index != null) {
+            return index;
+        }
+        synchronized (Pack.class) {
+            if (index == null) {
+                if (!INDEX_FILE.exists()) {
+                    generation = 0;
+                    return ByteBuffer.allocate(0);
+                }
+                try (FileChannel channel = FileChannel.open(INDEX_FILE.toPath(),
+                        StandardOpenOption.READ)) {
+                    ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                            channel.size());
+                    long gen = 0;
+                    if (mapped.limit() >= HEADER_LENGTH
+                            && mapped.slice(0, MAGIC.length).equals(ByteBuffer.wrap(MAGIC))) {
+                        gen = mapped.getLong(MAGIC.length);
+                        mapped = mapped.slice(HEADER_LENGTH, mapped.limit() - HEADER_LENGTH);
+                    }
+                    generation = gen;
+                    index = mapped;
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Unmaps the index, so that it is mapped again when next used, in case
+     * another process has changed the pack.
+     */
+    static void reload() {
+        index = null;
+    }
+
+    /**
+     * Returns the pack file named by the index, which may not exist if
+     * there is no pack.
+     *
+     * @return the pack file
+     */
+    static File file() {
+        index();
+        return file(generation);
+    }
+
+    /**
+     * Returns the pack file of generation GEN.
+     */
+    private static File file(long gen) {
+        return gen == 0 ? PACK_FILE : Utils.join(PACK_DIR, "pack-" + gen + ".dat");
+    }
+
+    /**
+     * Returns the position of the index entry of the specified object,
+     * or -1 if it is not in the pack.
+     *
+     * @param s SHA-1 value of the object
+     * @return position of the entry, or -1
+     */
+    private static int find(String s) {
+        ByteBuffer idx = index();
+        byte[] key = Utils.fromHex(s), entry = new byte[SHA1_BYTES];
+        int lo = 0, hi = idx.limit() / ENTRY_LENGTH - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            idx.get(mid * ENTRY_LENGTH, entry);
+            int cmp = Arrays.compareUnsigned(entry, key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns true if and only if the specified object is in the pack.
+     *
+     * @param s SHA-1 value of the object
+     * @return true if the object is packed
+     */
+    public static boolean contains(String s) {
+        return find(s) >= 0;
+    }
+
+    /**
+     * Opens a stream of the stored bytes of the specified object, or returns
+     * null if it is not in the pack.
+     *
+     * @param s SHA-1 value of the object
+     * @return an input stream, or null
+     */
+    public static InputStream open(String s) {
+        int pos = find(s);
+        if (pos < 0) {
+            return null;
+        }
+        ByteBuffer idx = index();
+        long offset = idx.getLong(pos * ENTRY_LENGTH + SHA1_BYTES);
+        long length = idx.getLong(pos * ENTRY_LENGTH + SHA1_BYTES + 8);
+        try {
+            return new Slice(FileChannel.open(file().toPath(), StandardOpenOption.READ),
+                    offset, length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * Returns the number of bytes the specified object takes in the pack,
+     * or -1 if it is not in the pack.
+     *
+     * @param s SHA-1 value of the object
+     * @return length of the object in the pack, or -1
+     */
+    public static long length(String s) {
+        int pos = find(s);
+        return pos < 0 ? -1 : index().getLong(pos * ENTRY_LENGTH + SHA1_BYTES + 8);
+    }
+
+    /**
+     * Returns SHA-1 values of all objects in the pack, in ascending order.
+     *
+     * @return a list of SHA-1 values
+     */
+    public static List<String> list() {
+        ByteBuffer idx = index();
+        List<String> result = new ArrayList<>();
+        byte[] entry = new byte[SHA1_BYTES];
+        for (int pos = 0; pos < idx.limit(); pos += ENTRY_LENGTH) {
+            idx.get(pos, entry);
+            result.add(Utils.toHex(entry));
+        }
+        return result;
+    }
+
+    /**
+     * Returns SHA-1 values of all objects in the pack that start with the
+     * specified prefix, in ascending order. Only the matching part of the
+     * index is visited.
+     *
+     * @param prefix prefix of SHA-1 values in hexadecimal
+     * @return a list of matching SHA-1 values
+     */
+    public static List<String> listPrefix(String prefix) {
+        ByteBuffer idx = index();
+        byte[] key = Utils.fromHex(prefix.length() % 2 == 0 ? prefix : prefix + "0");
+        byte[] entry = new byte[SHA1_BYTES];
+        int lo = 0, hi = idx.limit() / ENTRY_LENGTH;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            idx.get(mid * ENTRY_LENGTH, entry);
+            if (Arrays.compareUnsigned(entry, 0, key.length, key, 0, key.length) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        List<String> result = new ArrayList<>();
+        for (int pos = lo * ENTRY_LENGTH; pos < idx.limit(); pos += ENTRY_LENGTH) {
+            idx.get(pos, entry);
+            String name = Utils.toHex(entry);
+            if (!name.startsWith(prefix)) {
+                break;
+            }
+            result.add(name);
+        }
+        return result;
+    }
+
+    /**
+     * Appends the specified loose objects to the pack and rewrites the index.
+     * Objects already in the pack are skipped. The loose files are left alone;
+     * it is up to the caller to delete them.
+     *
+     * @param names SHA-1 values of the loose objects to pack
+     */
+    public static void add(List<String> names) {
+        if (PACK_DIR.mkdirs()) {
+            Durable.created(PACK_DIR);
+        }
+        ByteBuffer old = index();
+        long gen = generation;
+        List<byte[]> entries = new ArrayList<>();
+        for (int pos = 0; pos < old.limit(); pos += ENTRY_LENGTH) {
+            byte[] entry = new byte[ENTRY_LENGTH];
+            old.get(pos, entry);
+            entries.add(entry);
+        }
+
+        try (FileChannel pack = FileChannel.open(file(gen).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            for (String s : names) {
+                if (contains(s)) {
+                    continue;
+                }
+                long offset = pack.size(), length;
+                try (FileChannel loose = FileChannel.open(GitletObject.getPath(s).toPath(),
+                        StandardOpenOption.READ)) {
+                    length = loose.size();
+                    for (long done = 0; done < length; ) {
+                        done += loose.transferTo(done, length - done, pack);
+                    }
+                }
+                entries.add(ByteBuffer.allocate(ENTRY_LENGTH).put(Utils.fromHex(s))
+                        .putLong(offset).putLong(length).array());
+            }
+            pack.force(true);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+
+        writeIndex(entries, gen);
+    }
+
+    /**
+     * Rewrites the pack without the specified objects, reclaiming their space.
+     * Names of objects that are not in the pack are ignored, and nothing is
+     * written if none of them is. The remaining objects are copied to a pack
+     * file of the next generation, which takes effect when the index naming
+     * it replaces the old one; older pack files are deleted afterwards.
+     *
+     * @param names SHA-1 values of the objects to remove
+     */
+    public static void remove(Set<String> names) {
+        names.forEach(ObjectCache::remove);
+        ByteBuffer old = index();
+        long gen = generation;
+        List<byte[]> entries = new ArrayList<>();
+        byte[] sha1 = new byte[SHA1_BYTES];
+        for (int pos = 0; pos < old.limit(); pos += ENTRY_LENGTH) {
+            old.get(pos, sha1);
+            if (!names.contains(Utils.toHex(sha1))) {
+                byte[] entry = new byte[ENTRY_LENGTH];
+                old.get(pos, entry);
+                entries.add(entry);
+            }
+        }
+        if (entries.size() == old.limit() / ENTRY_LENGTH) {
+            return;
+        }
+
+        File next = file(gen + 1);
+        try (FileChannel pack = FileChannel.open(file(gen).toPath(), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(next.toPath(), StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (byte[] entry : entries) {
+                ByteBuffer b = ByteBuffer.wrap(entry);
+                long offset = b.getLong(SHA1_BYTES), length = b.getLong(SHA1_BYTES + 8);
+                b.putLong(SHA1_BYTES, out.size());
+                for (long done = 0; done < length; ) {
+                    done += pack.transferTo(offset + done, length - done, out);
+                }
+            }
+        } catch (IOException excp) {
+            next.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Durable.written(next);
+        writeIndex(entries, gen + 1);
+        for (String name : Utils.plainFilenamesIn(PACK_DIR)) {
+            if (name.startsWith("pack") && name.endsWith(".dat") && !name.equals(next.getName())) {
+                Utils.join(PACK_DIR, name).delete();
+            }
+        }
+    }
+
+    /**
+     * Sorts the specified index entries and atomically replaces the index
+     * with them, naming the pack file of generation GEN. The pack file must
+     * have been synced or marked as written, see {@link Durable}.
+     *
+     * @param entries entries of the new index
+     * @param gen     generation of the pack file
+     */
+    private static void writeIndex(List<byte[]> entries, long gen) {
+        entries.sort((a, b) -> Arrays.compareUnsigned(a, 0, SHA1_BYTES, b, 0, SHA1_BYTES));
+        ByteBuffer newIndex = ByteBuffer.allocate(HEADER_LENGTH + entries.size() * ENTRY_LENGTH);
+        newIndex.put(MAGIC).putLong(gen);
+        for (byte[] entry : entries) {
+            newIndex.put(entry);
+        }
+        File temp = Utils.join(PACK_DIR, "pack.idx.tmp");
+        Utils.writeContents(temp, (Object) newIndex.array());
+        Durable.replace(temp, INDEX_FILE);
+        index = null;
+    }
+
+    /**
+     * Deletes the pack and its index. Objects in it are lost unless
+     * they are also stored as loose objects.
+     */
+    public static void delete() {
+        File pack = file();
+        index = null;
+        INDEX_FILE.delete();
+        pack.delete();
+    }
+
+    /**
+     * An input stream over a range of bytes of a file channel, which is
+     * closed together with the stream.
+     */
+    private static class Slice extends InputStream {
+        /**
+         * The underlying channel.
+         */
+        private final FileChannel channel;
+        /**
+         * Position in the channel of the next byte to read.
+         */
+        private long position;
+        /**
+         * Position in the channel where the range ends.
+         */
+        private final long end;
+
+        /**
+         * Creates a stream of LENGTH bytes of CHANNEL starting at OFFSET.
+         */
+        Slice(FileChannel channel, long offset, long length) {
+            this.channel = channel;
+            this.position = offset;
+            this.end = offset + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            len = (int) Math.min(len, end - position);
+            int n = channel.read(ByteBuffer.wrap(b, off, len), position);
+            if (n < 0) {
+                throw new IOException("Pack file is truncated.");
+            }
+            position += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
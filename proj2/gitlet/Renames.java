@@ -0,0 +1,331 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Finds the files of a set of changes that were renamed or copied from
+ * other files, as git does with {@code -M -C}.
+ * <p>
+ * The changes are taken against a base commit, as given by
+ * {@link Staged#delta(Commit, Commit)}. A file added by the changes
+ * may come from a file they remove, which makes it a rename, or from a file
+ * they modify, which makes it a copy. Files with the same content are paired
+ * first, by SHA-1 value alone, and a removed file is renamed once, to an
+ * added file with the same name if there is one; further files with its
+ * content are copies.
+ * <p>
+ * The remaining added files are compared with all sources by similarity.
+ * Each file is cut into chunks ending at a newline or after
+ * {@link Renames#CHUNK_SIZE} bytes, and its fingerprint is the sorted hashes
+ * of its chunks. The similarity of two files is the number of bytes in the
+ * chunks they have in common, as a percentage of the size of the larger file,
+ * and must be at least {@link Renames#MIN_SCORE}. To avoid comparing every
+ * pair of files, the chunks of the sources are indexed, leaving out chunks
+ * found in more than {@link Renames#COMMON_CHUNK} sources, such as blank
+ * lines, and only the {@link Renames#CANDIDATES} sources sharing the most
+ * bytes of indexed chunks with an added file are compared with it. The time
+ * taken thus grows with the total size of the files, not with the product of
+ * their numbers. The most similar pairs are taken first.
+ *
+ * @author Fei Pan
+ */
+public class Renames {
+    /**
+     * Minimum similarity of a rename or copy, in percent.
+     */
+    static final int MIN_SCORE = 50;
+    /**
+     * Maximum length of a chunk of a fingerprint.
+     */
+    static final int CHUNK_SIZE = 64;
+    /**
+     * Chunks found in more sources than this are not indexed.
+     */
+    static final int COMMON_CHUNK = 16;
+    /**
+     * Number of sources compared with each added file.
+     */
+    static final int CANDIDATES = 8;
+    /**
+     * Files larger than this are only paired by SHA-1 value.
+     */
+    static final int MAX_SIZE = 1 << 24;
+    /**
+     * Mask of the length of a chunk in its value, see
+     * {@link Renames#fingerprint(String)}.
+     */
+    private static final long LENGTH_MASK = 0x7f;
+    /**
+     * SHA-1 value of an empty file, which is never paired.
+     */
+    private static final String EMPTY = Utils.sha1((Object) new byte[0]);
+
+    /**
+     * Sources of the renamed files, by added file.
+     */
+    private final Map<File, File> renamed = new TreeMap<>();
+    /**
+     * Sources of the copied files, by added file.
+     */
+    private final Map<File, File> copied = new TreeMap<>();
+    /**
+     * Similarity of the renamed and copied files to their sources, in percent.
+     */
+    private final Map<File, Integer> scores = new HashMap<>();
+
+    /**
+     * Finds the renames and copies among the specified changes to BASE.
+     * Files are only read if some added file has no source with the same
+     * content.
+     *
+     * @param base    the commit the changes apply to
+     * @param changes SHA-1 values of blobs by path, null for a removed file
+     * @return the renames and copies
+     */
+    static Renames of(Commit base, Map<File, String> changes) {
+        Renames result = new Renames();
+        List<File> targets = new ArrayList<>(), removed = new ArrayList<>(),
+                modified = new ArrayList<>();
+        Map<File, String> versions = new HashMap<>();
+        for (Map.Entry<File, String> change : changes.entrySet()) {
+            File f = change.getKey();
+            String s = base.getFile(f);
+            if (s == null && change.getValue() != null) {
+                targets.add(f);
+                versions.put(f, change.getValue());
+            } else if (s != null) {
+                (change.getValue() == null ? removed : modified).add(f);
+                versions.put(f, s);
+            }
+        }
+        if (targets.isEmpty() || removed.isEmpty() && modified.isEmpty()) {
+            return result;
+        }
+        Comparator<File> byPath = Comparator.comparing(File::getPath);
+        targets.sort(byPath);
+        removed.sort(byPath);
+        modified.sort(byPath);
+        List<File> sources = new ArrayList<>(removed);
+        sources.addAll(modified);
+        Set<File> removals = new HashSet<>(removed), used = new HashSet<>();
+
+        Map<String, List<File>> bySha1 = new HashMap<>();
+        for (File f : sources) {
+            bySha1.computeIfAbsent(versions.get(f), k -> new ArrayList<>()).add(f);
+        }
+        List<File> rest = new ArrayList<>();
+        for (File f : targets) {
+            String s = versions.get(f);
+            List<File> same = s.equals(EMPTY) ? null : bySha1.get(s);
+            if (same == null) {
+                rest.add(f);
+                continue;
+            }
+            File source = null;
+            for (File g : same) {
+                if (removals.contains(g) && !used.contains(g)
+                        && (source == null || g.getName().equals(f.getName()))) {
+                    source = g;
+                }
+            }
+            result.pair(f, source != null ? source : same.get(0), 100, removals, used);
+        }
+        if (!rest.isEmpty()) {
+            result.pairSimilar(rest, sources, versions, removals, used);
+        }
+        return result;
+    }
+
+    /**
+     * Pairs the added files TARGETS with the most similar of SOURCES,
+     * whose contents are given by VERSIONS.
+     */
+    private void pairSimilar(List<File> targets, List<File> sources, Map<File, String> versions,
+                             Set<File> removals, Set<File> used) {
+        List<long[]> sourcePrints = Workers.map(sources, f -> fingerprint(versions.get(f))),
+                targetPrints = Workers.map(targets, f -> fingerprint(versions.get(f)));
+
+        // Sources of each chunk, preceded by their number, or none if common.
+        HashMap<Long, int[]> index = new HashMap<>();
+        for (int i = 0; i < sources.size(); i += 1) {
+            long[] print = sourcePrints.get(i);
+            for (int k = 0; print != null && k < print.length; k += 1) {
+                if (k > 0 && print[k] == print[k - 1]) {
+                    continue;
+                }
+                int[] owners = index.computeIfAbsent(print[k], key -> new int[]{0});
+                if (owners.length == 0) {
+                    continue;
+                } else if (owners[0] == COMMON_CHUNK) {
+                    index.put(print[k], new int[0]);
+                    continue;
+                }
+                if (owners[0] + 1 == owners.length) {
+                    owners = Arrays.copyOf(owners, Math.min(2 * owners.length, COMMON_CHUNK + 1));
+                    index.put(print[k], owners);
+                }
+                owners[0] += 1;
+                owners[owners[0]] = i;
+            }
+        }
+
+        List<long[]> pairs = new ArrayList<>();
+        long[] shared = new long[sources.size()];
+        for (int t = 0; t < targets.size(); t += 1) {
+            long[] print = targetPrints.get(t);
+            if (print == null) {
+                continue;
+            }
+            List<Integer> touched = new ArrayList<>();
+            for (int k = 0; k < print.length; k += 1) {
+                int[] owners = k > 0 && print[k] == print[k - 1] ? null : index.get(print[k]);
+                int count = owners == null || owners.length == 0 ? 0 : owners[0];
+                for (int j = 1; j <= count; j += 1) {
+                    if (shared[owners[j]] == 0) {
+                        touched.add(owners[j]);
+                    }
+                    shared[owners[j]] += print[k] & LENGTH_MASK;
+                }
+            }
+            touched.sort(Comparator.comparingLong(i -> -shared[i]));
+            for (int i : touched.subList(0, Math.min(CANDIDATES, touched.size()))) {
+                int score = score(sourcePrints.get(i), print);
+                if (score >= MIN_SCORE) {
+                    pairs.add(new long[]{score, t, i});
+                }
+            }
+            for (int i : touched) {
+                shared[i] = 0;
+            }
+        }
+
+        pairs.sort(Comparator.<long[]>comparingLong(p -> -p[0])
+                .thenComparing(p -> !targets.get((int) p[1]).getName()
+                        .equals(sources.get((int) p[2]).getName()))
+                .thenComparingLong(p -> p[1]).thenComparingLong(p -> p[2]));
+        for (long[] pair : pairs) {
+            File target = targets.get((int) pair[1]);
+            if (!scores.containsKey(target)) {
+                pair(target, sources.get((int) pair[2]), (int) pair[0], removals, used);
+            }
+        }
+    }
+
+    /**
+     * Records that TARGET comes from SOURCE with similarity SCORE. It is a
+     * rename if SOURCE is among REMOVALS and not yet USED by a rename.
+     */
+    private void pair(File target, File source, int score, Set<File> removals, Set<File> used) {
+        if (removals.contains(source) && used.add(source)) {
+            renamed.put(target, source);
+        } else {
+            copied.put(target, source);
+        }
+        scores.put(target, score);
+    }
+
+    /**
+     * Returns the sorted chunks of the blob with SHA-1 value S, or null if
+     * it is empty or larger than {@link Renames#MAX_SIZE}. The hash of a
+     * chunk is followed by its length in the lowest 7 bits, so that equal
+     * chunks have equal values, and the length of a chunk is known from it.
+     */
+    private static long[] fingerprint(String s) {
+        byte[] content = Blob.contentOf(s, MAX_SIZE);
+        if (content == null || content.length == 0) {
+            return null;
+        }
+        long[] result = new long[content.length];
+        int n = 0;
+        for (int start = 0; start < content.length; n += 1) {
+            long hash = 0xcbf29ce484222325L;
+            int end = start;
+            while (end < content.length && end - start < CHUNK_SIZE) {
+                hash = (hash ^ content[end]) * 0x100000001b3L;
+                end += 1;
+                if (content[end - 1] == '\n') {
+                    break;
+                }
+            }
+            result[n] = hash << 7 | (end - start);
+            start = end;
+        }
+        result = Arrays.copyOf(result, n);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Returns the similarity of the files with fingerprints A and B, in
+     * percent, which is 0 if either is null.
+     */
+    private static int score(long[] a, long[] b) {
+        if (a == null || b == null) {
+            return 0;
+        }
+        long aSize = size(a), bSize = size(b), common = 0;
+        if (Math.min(aSize, bSize) * 100 < Math.max(aSize, bSize) * MIN_SCORE) {
+            return 0;
+        }
+        for (int i = 0, j = 0; i < a.length && j < b.length;) {
+            if (a[i] < b[j]) {
+                i += 1;
+            } else if (a[i] > b[j]) {
+                j += 1;
+            } else {
+                common += a[i] & LENGTH_MASK;
+                i += 1;
+                j += 1;
+            }
+        }
+        return (int) (common * 100 / Math.max(aSize, bSize));
+    }
+
+    /**
+     * Returns the size of the file with fingerprint PRINT.
+     */
+    private static long size(long[] print) {
+        long result = 0;
+        for (long chunk : print) {
+            result += chunk & LENGTH_MASK;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the sources of the renamed files, by added file.
+     *
+     * @return renamed files
+     */
+    Map<File, File> renamed() {
+        return renamed;
+    }
+
+    /**
+     * Returns the sources of the copied files, by added file.
+     *
+     * @return copied files
+     */
+    Map<File, File> copied() {
+        return copied;
+    }
+
+    /**
+     * Returns the similarity of a renamed or copied file to its source.
+     *
+     * @param target the renamed or copied file
+     * @return similarity in percent
+     */
+    int score(File target) {
+        return scores.get(target);
+    }
+}
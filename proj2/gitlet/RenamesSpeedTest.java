@@ -0,0 +1,64 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Performs a timing test of finding renames, see {@link Renames}, when a
+ * large directory is moved and every file in it is edited, so that none
+ * can be paired by SHA-1 value alone.
+ * <p>
+ * Usage: {@code java gitlet.RenamesSpeedTest [FILES] [LINES]}, run in an
+ * empty directory. It stores FILES files of LINES lines each, which share
+ * a header and otherwise have lines of their own, and the same files with
+ * one line changed under a new directory, in a fresh .gitlet directory.
+ *
+ * @author Fei Pan
+ */
+public class RenamesSpeedTest {
+    /**
+     * Runs the timing test. ARGS may give the number of files and the
+     * number of lines in each.
+     */
+    public static void main(String[] args) {
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int lines = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        if (Repository.GITLET_DIR.exists()) {
+            Utils.exit("Run this in a directory without a .gitlet directory.");
+        }
+        Repository.GITLET_REF_DIR.mkdirs();
+
+        HashMap<File, String> tracked = new HashMap<>();
+        Map<File, String> changes = new HashMap<>();
+        for (int i = 0; i < files; i += 1) {
+            StringBuilder content = new StringBuilder("/*\n * Shared header.\n */\n\n");
+            for (int j = 0; j < lines; j += 1) {
+                content.append("file ").append(i).append(" line ").append(j).append('\n');
+            }
+            File f = new File("old/file" + i + ".txt");
+            tracked.put(f, store(content.toString()));
+            changes.put(f, null);
+            changes.put(new File("new/file" + i + ".txt"),
+                    store(content.toString().replace(" line 1\n", " line one\n")));
+        }
+        Commit base = new Commit("base", new Date(), tracked, new String[0]);
+        base.store();
+
+        long start = System.nanoTime();
+        Renames renames = Renames.of(base, changes);
+        double time = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d files of %d lines moved and edited.%n", files, lines);
+        System.out.printf("Found %d renames in %.3f s%n", renames.renamed().size(), time);
+    }
+
+    /**
+     * Stores a blob of CONTENT and returns its SHA-1 value.
+     */
+    private static String store(String content) {
+        Blob blob = new Blob(content.getBytes());
+        blob.store();
+        return blob.sha1();
+    }
+}
@@ -0,0 +1,93 @@
+package gitlet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Used to test functionality of {@link Renames}.
+ *
+ * @author Fei Pan
+ */
+public class RenamesTest {
+    /**
+     * Returns a text of LINES numbered lines, each starting with PREFIX.
+     */
+    private static String text(String prefix, int lines) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < lines; i += 1) {
+            result.append(prefix).append(" line ").append(i).append('\n');
+        }
+        return result.toString();
+    }
+
+    /**
+     * Stores a blob of CONTENT and returns its SHA-1 value.
+     */
+    private static String store(String content) {
+        Blob blob = new Blob(content.getBytes());
+        blob.store();
+        return blob.sha1();
+    }
+
+    /**
+     * Check whether files with the same content are paired by SHA-1 value,
+     * a removed file being renamed once, preferably to a file with the same
+     * name, and further files with its content being copies.
+     */
+    @Test
+    public void testExactRenames() {
+        HashMap<File, String> tracked = new HashMap<>();
+        tracked.put(new File("a.txt"), store("a"));
+        tracked.put(new File("b.txt"), store("b"));
+        Commit base = new Commit("exact", new Date(2000L), tracked, new String[0]);
+        base.store();
+
+        Map<File, String> changes = new HashMap<>();
+        changes.put(new File("a.txt"), null);
+        changes.put(new File("dir/x.txt"), store("a"));
+        changes.put(new File("dir/a.txt"), store("a"));
+        changes.put(new File("new.txt"), store("new"));
+        Renames renames = Renames.of(base, changes);
+        Assert.assertEquals(Map.of(new File("dir/a.txt"), new File("a.txt")), renames.renamed());
+        Assert.assertEquals(Map.of(new File("dir/x.txt"), new File("a.txt")), renames.copied());
+        Assert.assertEquals(100, renames.score(new File("dir/a.txt")));
+    }
+
+    /**
+     * Check whether edited files are paired with the files they were renamed
+     * from among many similar ones, and whether files too different from any
+     * removed file are not paired.
+     */
+    @Test
+    public void testSimilarRenames() {
+        HashMap<File, String> tracked = new HashMap<>();
+        Map<File, String> changes = new HashMap<>();
+        for (int i = 0; i < 50; i += 1) {
+            File f = new File("old/file" + i + ".txt");
+            String content = "header\n\n" + text("file " + i, 20);
+            tracked.put(f, store(content));
+            changes.put(f, null);
+            if (i % 10 != 0) {
+                changes.put(new File("new/f" + i + ".txt"),
+                        store(content.replace("line 5\n", "line five\n")));
+            }
+        }
+        changes.put(new File("new/other.txt"), store("header\n\n" + text("other", 20)));
+        Commit base = new Commit("similar", new Date(3000L), tracked, new String[0]);
+        base.store();
+
+        Renames renames = Renames.of(base, changes);
+        Assert.assertEquals(45, renames.renamed().size());
+        Assert.assertTrue(renames.copied().isEmpty());
+        for (Map.Entry<File, File> rename : renames.renamed().entrySet()) {
+            Assert.assertEquals(rename.getKey().getName().replace("f", "file"),
+                    rename.getValue().getName());
+            Assert.assertTrue(renames.score(rename.getKey()) >= 90);
+        }
+    }
+}
@@ -1,6 +1,13 @@
 package gitlet;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
 
 /**
@@ -9,12 +16,17 @@ import java.util.*;
  * In gitlet, there are three kinds of {@link GitletObject}, respectively
  * {@link Commit}, {@link Blob} and {@link Staged}. Commit is used to store
  * commits, Blob is used to store files and Staged represents staging area.
- * All these objects are stored in {@link Repository#GITLET_DIR}/objects,
- * with their SHA-1 value being their names.
+ * Commits and blobs are stored in {@link Repository#GITLET_DIR}/objects,
+ * with their SHA-1 value being their names, until the {@code pack} command
+ * moves them into a single pack file, see {@link Pack}. Objects are
+ * compressed as configured in {@code config}, see {@link Config}.
  * <p>
- * Two single file {@code HEAD} and {@code STAGED} are stored in
+ * Two single file {@code HEAD} and {@code INDEX} are stored in
  * {@link Repository#GITLET_DIR}. {@code HEAD} stores name of the current
- * branch and {@code STAGED} stores SHA-1 value of the staging area object.
+ * branch and {@code INDEX} stores the staging area, see {@link Staged}.
+ * {@code MESSAGES} indexes commits by message and {@code COMMITS} lists
+ * all commits, see {@link CommitIndex}. {@code GRAPH} describes the history
+ * of commits, see {@link CommitGraph}.
  * <p>
  * Branches are stored in {@link Repository#GITLET_REF_DIR}, one each file.
  * Each file contains SHA-1 value of the topmost commit of the branch and
@@ -35,6 +47,10 @@ public class Repository {
      * The branches directory.
      */
     public static final File GITLET_REF_DIR = Utils.join(GITLET_DIR, "refs");
+    /**
+     * Default grace period of {@code gc} in seconds, which is two weeks.
+     */
+    static final long DEFAULT_GC_GRACE = 14 * 24 * 60 * 60;
 
     /**
      * Get a list of branch names.
@@ -70,7 +86,7 @@ public class Repository {
      */
     public static void setBranch(String branchName, String commitName) {
         File f = Utils.join(GITLET_REF_DIR, branchName);
-        Utils.writeContents(f, commitName);
+        Durable.write(f, commitName.getBytes(StandardCharsets.UTF_8));
     }
 
     /**
@@ -111,7 +127,7 @@ public class Repository {
      */
     public static void setRef(String ref, String val) {
         File f = Utils.join(GITLET_DIR, ref);
-        Utils.writeContents(f, val);
+        Durable.write(f, val.getBytes(StandardCharsets.UTF_8));
     }
 
     /**
@@ -130,30 +146,133 @@ public class Repository {
             Staged stagingArea = new Staged();
             initialCommit.store();
             stagingArea.store();
+            CommitIndex.record(initialCommit);
+            CommitGraph.record(initialCommit);
 
             setBranch("master", initialCommit.sha1());
             setRef("HEAD", "master");
-            setRef("STAGED", stagingArea.sha1());
         } else {
             Utils.exit("A Gitlet version-control system already exists in the current directory.");
         }
     }
 
     /**
-     * Adds a copy of the file as it currently exists to the staging area.
+     * Adds a copy of each file as it currently exists to the staging area.
      * Staging an already-staged file overwrites the previous entry in the staging area.
      * If the current working version of the file is identical to the version in the current commit,
      * do not stage it to be added, and remove it from the staging area if it is already there.
+     * <p>
+     * Directories are added recursively, except the {@code .gitlet} directory.
+     * File names are taken relative to the working directory, see
+     * {@link Repository#relative(String)}. Nothing is staged if any of the
+     * files does not exist or lies outside the working directory. Files are
+     * hashed by {@link Workers}, and the staging area is written once at the end.
      *
-     * @param fileName file to add
+     * @param fileNames files and directories to add
      */
-    public static void add(String fileName) {
-        Staged stagingArea = (Staged) GitletObject.readAndDeleteUnused(getRef("STAGED"));
+    public static void add(List<String> fileNames) {
+        Set<File> files = new LinkedHashSet<>();
+        for (String fileName : fileNames) {
+            File f = relative(fileName);
+            if (f.isDirectory()) {
+                files.addAll(filesIn(f));
+            } else if (f.exists()) {
+                files.add(f);
+            } else {
+                Utils.exit("File does not exist.");
+            }
+        }
+
+        Staged stagingArea = Staged.load();
         Commit current = (Commit) GitletObject.read(getBranch(getRef("HEAD")));
-        stagingArea.add(current, new File(fileName));
+        List<File> toAdd = new ArrayList<>(files);
+        List<String> hashes = Workers.map(toAdd, StatCache::sha1);
+        for (int i = 0; i < toAdd.size(); i += 1) {
+            stagingArea.add(current, toAdd.get(i), hashes.get(i));
+        }
         stagingArea.store();
     }
 
+    /**
+     * Returns the file with the specified name, which may be absolute or
+     * contain {@code .} and {@code ..}, relative to the working directory,
+     * or the working directory itself if the name refers to it. Exits if
+     * the file lies outside the working directory.
+     *
+     * @param fileName name of the file
+     * @return the file, relative to the working directory
+     */
+    private static File relative(String fileName) {
+        Path base = CWD.toPath().toAbsolutePath().normalize(),
+                path = base.resolve(fileName).normalize();
+        if (!path.startsWith(base)) {
+            Utils.exit("File is outside the working directory.");
+        }
+        return path.equals(base) ? CWD : new File(base.relativize(path).toString());
+    }
+
+    /**
+     * Returns all plain files in the specified directory and its
+     * subdirectories, in sorted order and relative to the working directory,
+     * leaving out the {@code .gitlet} directory, which is not entered.
+     *
+     * @param dir directory to list
+     * @return list of files
+     */
+    private static List<File> filesIn(File dir) {
+        Path base = CWD.toPath().toAbsolutePath().normalize(),
+                gitlet = GITLET_DIR.toPath().toAbsolutePath().normalize();
+        List<File> result = new ArrayList<>();
+        try {
+            Files.walkFileTree(dir.toPath().toAbsolutePath().normalize(),
+                    new SimpleFileVisitor<>() {
+                        @Override
+                        public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) {
+                            return d.equals(gitlet) ? FileVisitResult.SKIP_SUBTREE
+                                    : FileVisitResult.CONTINUE;
+                        }
+
+                        @Override
+                        public FileVisitResult visitFile(Path f, BasicFileAttributes attrs) {
+                            if (attrs.isRegularFile()) {
+                                result.add(new File(base.relativize(f).toString()));
+                            }
+                            return FileVisitResult.CONTINUE;
+                        }
+                    });
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        result.sort(null);
+        return result;
+    }
+
+    /**
+     * Returns all plain files in the working directory and its
+     * subdirectories, see {@link Repository#filesIn(File)}.
+     *
+     * @return list of files
+     */
+    private static List<File> workingFiles() {
+        return filesIn(CWD);
+    }
+
+    /**
+     * Deletes the specified file from the working directory, along with the
+     * directories it leaves empty.
+     *
+     * @param f file to delete, relative to the working directory
+     */
+    private static void deleteWorkingFile(File f) {
+        if (f.isDirectory() || !f.delete()) {
+            return;
+        }
+        File dir = f.getParentFile();
+        while (dir != null && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+
     /**
      * Saves a snapshot of tracked files in the current commit and staging area.
      * A commit will only update the contents of files it is tracking that
@@ -177,7 +296,7 @@ public class Repository {
      * @param parent  the second parent
      */
     private static void commit(String message, String parent) {
-        Staged stagingArea = (Staged) GitletObject.readAndDeleteUnused(getRef("STAGED"));
+        Staged stagingArea = Staged.load();
         Commit current = (Commit) GitletObject.read(getBranch(getRef("HEAD")));
 
         if (stagingArea.isEmpty()) {
@@ -187,14 +306,12 @@ public class Repository {
             Utils.exit("Please enter a commit message.");
         }
 
-        Commit commit = current.nextCommit(message, stagingArea);
-        if (parent != null) {
-            commit.addParent(parent);
-        }
+        Commit commit = current.nextCommit(message, stagingArea, parent);
         commit.store();
+        CommitIndex.record(commit);
+        CommitGraph.record(commit);
         setBranch(getRef("HEAD"), commit.sha1());
         stagingArea.store();
-        // No need to reset STAGED as Stage.store has done so
     }
 
     /**
@@ -206,7 +323,7 @@ public class Repository {
      * @param fileName file to remove
      */
     public static void rm(String fileName) {
-        Staged stagingArea = (Staged) GitletObject.readAndDeleteUnused(getRef("STAGED"));
+        Staged stagingArea = Staged.load();
         Commit current = (Commit) GitletObject.read(getBranch(getRef("HEAD")));
         File file = new File(fileName);
         if (stagingArea.rm(file)) {
@@ -215,7 +332,7 @@ public class Repository {
         }
         if (current.hasFile(file)) {
             stagingArea.stageForRemoval(file);
-            Utils.restrictedDelete(file);
+            deleteWorkingFile(file);
             stagingArea.store();
             return;
         }
@@ -227,51 +344,399 @@ public class Repository {
      * each commit backwards along the commit tree until the initial commit,
      * following the first parent commit links, ignoring any second parents found in merge commits.
      * In regular Git, this is what you get with git log --first-parent.
+     * The history is walked in the commit graph, see {@link CommitGraph},
+     * and only messages are read from the commits themselves.
      */
     public static void log() {
-        String currentSHA1 = getBranch(getRef("HEAD"));
-        while (true) {
-            Commit commit = (Commit) GitletObject.read(currentSHA1);
-            commit.show();
-            if (commit.isInitial()) {
+        log(Integer.MAX_VALUE, Long.MIN_VALUE, false);
+    }
+
+    /**
+     * Like {@link Repository#log()}, but stops after LIMIT commits, or at
+     * the first commit made before SINCE, given in milliseconds, so that
+     * only the commits shown are visited. If ONELINE is true, each commit
+     * is shown in one line, see {@link Commit#showOneline(StringBuilder, String, String)}.
+     * Output is buffered, see {@link Utils#flush(StringBuilder, boolean)},
+     * and the walk also stops once the output can no longer be written.
+     *
+     * @param limit   largest number of commits to show
+     * @param since   earliest date of the commits to show in milliseconds
+     * @param oneline whether to show each commit in one line
+     */
+    public static void log(int limit, long since, boolean oneline) {
+        StringBuilder out = new StringBuilder();
+        int pos = CommitGraph.position(getBranch(getRef("HEAD")));
+        for (int shown = 0; pos != CommitGraph.NONE && shown < limit; shown += 1) {
+            long timestamp = CommitGraph.timestamp(pos);
+            if (timestamp < since) {
                 break;
             }
-            currentSHA1 = commit.getParents()[0];
+            int[] parents = CommitGraph.parents(pos);
+            String commitName = CommitGraph.id(pos);
+            if (oneline) {
+                Commit.showOneline(out, commitName, Commit.messageOf(commitName));
+            } else {
+                String[] parentNames = new String[parents.length];
+                for (int i = 0; i < parents.length; i += 1) {
+                    parentNames[i] = CommitGraph.id(parents[i]);
+                }
+                Commit.show(out, commitName, parentNames, timestamp,
+                        Commit.messageOf(commitName));
+            }
+            if (!Utils.flush(out, false)) {
+                return;
+            }
+            pos = parents.length == 0 ? CommitGraph.NONE : parents[0];
         }
+        Utils.flush(out, true);
     }
 
     /**
      * Like log, except displays information about all commits ever made.
-     * The order of the commits is not defined.
+     * The order of the commits is not defined. Commits are enumerated from
+     * the commit catalog and read one at a time, so blobs are never touched.
+     * Output is buffered, see {@link Utils#flush(StringBuilder, boolean)}.
      */
     public static void globalLog() {
-        for (GitletObject object : GitletObject.listObjects()) {
-            if (object.getClass().equals(Commit.class)) {
-                ((Commit) object).show();
-            }
-        }
+        StringBuilder out = new StringBuilder();
+        CommitIndex.forEachCommit(commitName -> {
+            ((Commit) GitletObject.read(commitName)).show(out);
+            Utils.flush(out, false);
+        });
+        Utils.flush(out, true);
     }
 
     /**
      * Prints out the ids of all commits that have the given commit message, one per line.
      * If there are multiple such commits, it prints the ids out on separate lines.
+     * Only the message index is read, see {@link CommitIndex}.
      *
      * @param message message
      */
     public static void find(String message) {
-        boolean nothingFound = true;
-        for (GitletObject object : GitletObject.listObjects()) {
-            if (object.getClass().equals(Commit.class)) {
-                Commit commit = (Commit) object;
-                if (commit.getMessage().equals(message)) {
-                    Utils.message(commit.sha1());
-                    nothingFound = false;
+        List<String> found = CommitIndex.find(message);
+        if (found.isEmpty()) {
+            Utils.exit("Found no commit with that message.");
+        }
+        for (String commitName : found) {
+            Utils.message(commitName);
+        }
+    }
+
+    /**
+     * Rebuilds the commit indexes and the commit graph from the object
+     * store. Needed for repositories created before the indexes existed
+     * or whose indexes were damaged.
+     */
+    public static void reindex() {
+        CommitIndex.rebuild();
+        CommitGraph.rebuild();
+    }
+
+    /**
+     * Rewrites the commits stored by earlier versions, which used Java
+     * serialization, in the binary format, and moves the staging area into
+     * the index file, see {@link Staged#load()}. The SHA-1 value of
+     * a rewritten commit changes, and so do those of its descendants, which are
+     * rewritten as well. Branches are moved to the rewritten commits, the old
+     * commits are deleted from the object store and the commit indexes are
+     * rebuilt in their original order. Commits already in the binary format
+     * are left as they are, so migrating twice changes nothing.
+     */
+    public static void migrate() {
+        Staged.load();
+        List<String> ids = new ArrayList<>();
+        CommitIndex.forEachCommit(ids::add);
+        Map<String, String> renamed = new HashMap<>();
+        for (String id : ids) {
+            migrateCommit(id, renamed);
+        }
+        for (String branch : getBranches()) {
+            setBranch(branch, migrateCommit(getBranch(branch), renamed));
+        }
+
+        Set<String> obsolete = new HashSet<>();
+        for (Map.Entry<String, String> entry : renamed.entrySet()) {
+            if (!entry.getKey().equals(entry.getValue())) {
+                obsolete.add(entry.getKey());
+                GitletObject.delete(entry.getKey());
+            }
+        }
+        Pack.remove(obsolete);
+
+        List<Commit> commits = new ArrayList<>();
+        for (String id : ids) {
+            commits.add((Commit) GitletObject.read(renamed.get(id)));
+        }
+        CommitIndex.replace(commits);
+        CommitGraph.rebuild();
+    }
+
+    /**
+     * Stores the specified commit in the binary format, after doing so for
+     * its ancestors, and returns its new SHA-1 value. Ancestors are visited
+     * without recursion, so that long histories do not overflow the stack.
+     *
+     * @param id      SHA-1 value of the commit
+     * @param renamed new SHA-1 values of commits already migrated, by their
+     *                old SHA-1 values, which is updated
+     * @return new SHA-1 value of the commit
+     */
+    private static String migrateCommit(String id, Map<String, String> renamed) {
+        Deque<String> pending = new ArrayDeque<>();
+        pending.push(id);
+        while (!pending.isEmpty()) {
+            String s = pending.peek();
+            if (renamed.containsKey(s)) {
+                pending.pop();
+                continue;
+            }
+            Commit commit = (Commit) GitletObject.read(s);
+            String[] parents = commit.getParents().clone();
+            boolean ready = true;
+            for (int i = 0; i < parents.length; i += 1) {
+                if (renamed.containsKey(parents[i])) {
+                    parents[i] = renamed.get(parents[i]);
+                } else {
+                    pending.push(parents[i]);
+                    ready = false;
                 }
             }
+            if (ready) {
+                pending.pop();
+                Commit migrated = new Commit(commit.getMessage(), commit.getDate(),
+                        new HashMap<>(commit.getTracked()), parents);
+                renamed.put(s, migrated.store());
+            }
         }
-        if (nothingFound) {
-            Utils.exit("Found no commit with that message.");
+        return renamed.get(id);
+    }
+
+    /**
+     * Deletes objects that cannot be reached from any branch or from the
+     * staging area, and temporary files left by interrupted writes.
+     * <p>
+     * Commits are reachable from branches and from their children, trees
+     * from the commits and trees containing them, blobs from the trees, or
+     * commits of earlier versions, tracking them and from the staging area,
+     * and the bases of deltas from the reachable blobs stored against them.
+     * Trees shared by many commits are read once. To leave
+     * alone objects that another command has stored but not yet referenced,
+     * only files last modified more than {@code gc.grace} seconds ago,
+     * see {@link Config}, are deleted. Packed objects are as old as the pack.
+     * Afterwards the commit indexes and the commit graph list only the
+     * remaining commits, including unreachable ones kept for their age, so
+     * {@code global-log} and {@code find} no longer visit deleted commits.
+     *
+     * @param dryRun if true, only report what would be deleted
+     */
+    public static void gc(boolean dryRun) {
+        String grace = Config.get("gc.grace", null);
+        long cutoff = System.currentTimeMillis()
+                - 1000 * (grace == null ? DEFAULT_GC_GRACE : Long.parseLong(grace));
+        Set<String> reachable = reachableObjects();
+
+        long bytes = 0;
+        List<String> loose = new ArrayList<>();
+        for (String s : GitletObject.listLoose()) {
+            File f = GitletObject.getPath(s);
+            if (!reachable.contains(s) && f.lastModified() < cutoff) {
+                loose.add(s);
+                bytes += f.length();
+            }
+        }
+        List<File> temps = new ArrayList<>();
+        File[] files = Utils.join(GITLET_DIR, "objects").listFiles();
+        for (File f : files == null ? new File[0] : files) {
+            if (f.getName().startsWith("tmp-") && f.lastModified() < cutoff) {
+                temps.add(f);
+                bytes += f.length();
+            }
+        }
+
+        Set<String> packed = new HashSet<>();
+        if (Pack.file().lastModified() < cutoff) {
+            for (String s : Pack.list()) {
+                if (!reachable.contains(s)) {
+                    packed.add(s);
+                    bytes += Pack.length(s);
+                }
+            }
+        }
+
+        int count = loose.size() + temps.size() + packed.size();
+        if (dryRun) {
+            Utils.message("Would remove %d objects, %d bytes.", count, bytes);
+            return;
+        }
+        if (count == 0) {
+            Utils.message("Removed 0 objects, 0 bytes.");
+            return;
+        }
+        for (String s : loose) {
+            GitletObject.delete(s);
+            GitletObject.getPath(s).getParentFile().delete();
+        }
+        for (File f : temps) {
+            f.delete();
+        }
+        if (!packed.isEmpty()) {
+            Pack.remove(packed);
+        }
+
+        List<Commit> commits = new ArrayList<>();
+        CommitIndex.forEachCommit(s -> {
+            if (GitletObject.exists(s)) {
+                commits.add((Commit) GitletObject.read(s));
+            }
+        });
+        CommitIndex.replace(commits);
+        CommitGraph.rebuild();
+        Utils.message("Removed %d objects, %d bytes.", count, bytes);
+    }
+
+    /**
+     * Returns SHA-1 values of all objects reachable from the branches and
+     * from the staging area, as described in {@link Repository#gc(boolean)}.
+     *
+     * @return reachable objects
+     */
+    private static Set<String> reachableObjects() {
+        Set<String> reachable = new HashSet<>();
+        List<String> blobs = new ArrayList<>();
+        Deque<String> commits = new ArrayDeque<>();
+        for (String branch : getBranches()) {
+            commits.push(getBranch(branch));
+        }
+        while (!commits.isEmpty()) {
+            String s = commits.pop();
+            Commit commit = reachable.add(s) ? (Commit) GitletObject.read(s) : null;
+            if (commit != null) {
+                commits.addAll(List.of(commit.getParents()));
+                if (commit.hasTree()) {
+                    Tree.reachable(commit.getTree(), reachable, blobs);
+                } else {
+                    blobs.addAll(commit.getTracked().values());
+                }
+            }
+        }
+        for (String s : Staged.load().getChanges().values()) {
+            if (s != null) {
+                blobs.add(s);
+            }
+        }
+        for (String s : blobs) {
+            while (s != null && reachable.add(s) && GitletObject.exists(s)) {
+                s = Blob.baseOf(s);
+            }
+        }
+        return reachable;
+    }
+
+    /**
+     * Checks every object, loose or packed, by hashing it again, and every
+     * branch, which must point to a stored commit. Damaged objects and
+     * branches are listed, followed by a summary. Objects are checked by
+     * {@link Workers}, and listed in the order of their SHA-1 values. A
+     * staging area stored by an earlier version is first moved into the
+     * index file, see {@link Staged#load()}.
+     *
+     * @see GitletObject#verify(String)
+     */
+    public static void verify() {
+        Staged.load();
+        String[] names = GitletObject.list();
+        Arrays.sort(names);
+        List<Boolean> intact = Workers.map(List.of(names), GitletObject::verify);
+        int corrupt = 0;
+        for (int i = 0; i < names.length; i += 1) {
+            if (!intact.get(i)) {
+                Utils.message("Corrupt object %s.", names[i]);
+                corrupt += 1;
+            }
+        }
+        List<String> branches = getBranches();
+        branches.sort(null);
+        for (String branch : branches) {
+            if (!(GitletObject.read(getBranch(branch)) instanceof Commit)) {
+                Utils.message("Branch %s does not point to a commit.", branch);
+                corrupt += 1;
+            }
+        }
+        Utils.message("Checked %d objects and %d branches, %d damaged.",
+                names.length, branches.size(), corrupt);
+    }
+
+    /**
+     * Moves all loose objects into the pack, so that the object store
+     * consists of a few large files rather than one file per object.
+     *
+     * @see Pack
+     */
+    public static void pack() {
+        GitletObject.pack();
+    }
+
+    /**
+     * Rewrites every object, loose or packed, with the codec currently
+     * configured. If there is a pack, it is rebuilt from the rewritten objects.
+     *
+     * @see Codec
+     */
+    public static void recompress() {
+        Codec codec = Codec.current();
+        boolean packed = Pack.INDEX_FILE.exists();
+        for (String objectName : GitletObject.list()) {
+            GitletObject.recompress(objectName, codec);
+        }
+        if (packed) {
+            Pack.delete();
+            GitletObject.pack();
+        }
+    }
+
+    /**
+     * Prints the value of the specified configuration key.
+     *
+     * @param key key to print
+     * @see Config
+     */
+    public static void config(String key) {
+        String value = Config.get(key, null);
+        if (value == null) {
+            Utils.exit("No such configuration key is set.");
+        }
+        Utils.message(value);
+    }
+
+    /**
+     * Sets the specified configuration key. The {@code compression} key
+     * only accepts names of codecs and affects objects stored afterwards.
+     * The {@code threads} key only accepts positive integers, and the
+     * {@code cache.size} key only accepts numbers of bytes and the
+     * {@code gc.grace} key only accepts numbers of seconds.
+     *
+     * @param key   key to set
+     * @param value value to set
+     * @see Config
+     */
+    public static void config(String key, String value) {
+        if (key.equals("compression") && Codec.named(value) == null) {
+            Utils.exit("Unknown compression method.");
         }
+        if (key.equals("threads") && !value.matches("0*[1-9][0-9]{0,8}")) {
+            Utils.exit("Number of threads must be a positive integer.");
+        }
+        if (key.equals("cache.size") && !value.matches("[0-9]{1,18}")) {
+            Utils.exit("Cache size must be a number of bytes.");
+        }
+        if (key.equals("gc.grace") && !value.matches("[0-9]{1,15}")) {
+            Utils.exit("Grace period must be a number of seconds.");
+        }
+        if (key.equals("fsync") && !value.matches("true|false")) {
+            Utils.exit("fsync must be true or false.");
+        }
+        Config.set(key, value);
     }
 
     /**
@@ -279,7 +744,7 @@ public class Repository {
      * Also displays what files have been staged for addition or removal.
      */
     public static void status() {
-        Staged stagingArea = (Staged) GitletObject.readAndDeleteUnused(getRef("STAGED"));
+        Staged stagingArea = Staged.load();
         Commit current = (Commit) GitletObject.read(getBranch(getRef("HEAD")));
 
         List<String> branches = getBranches();
@@ -303,27 +768,35 @@ public class Repository {
 
         Utils.message("=== Staged Files ===");
         for (File f : staged) {
-            Utils.message(f.getName());
+            Utils.message(f.getPath());
         }
         Utils.message("");
 
         Utils.message("=== Removed Files ===");
         for (File f : removed) {
-            Utils.message(f.getName());
+            Utils.message(f.getPath());
         }
         Utils.message("");
 
         ArrayList<File> unstaged = new ArrayList<>(), untracked = new ArrayList<>();
-        for (String fileName : Utils.plainFilenamesIn(CWD)) {
-            File file = new File(fileName);
+        List<File> tracked = new ArrayList<>();
+        List<String> versions = new ArrayList<>();
+        for (File file : workingFiles()) {
             String currentVersion = current.getFile(file);
             if (stagingArea.hasFile(file)) {
                 currentVersion = stagingArea.getChanges().get(file);
             }
             if (currentVersion == null && !stagingArea.containsRemoval(file)) {
                 untracked.add(file);
-            } else if (!new Blob(file).sha1().equals(currentVersion)) {
-                unstaged.add(file);
+            } else {
+                tracked.add(file);
+                versions.add(currentVersion);
+            }
+        }
+        List<String> hashes = Workers.map(tracked, StatCache::sha1);
+        for (int i = 0; i < tracked.size(); i += 1) {
+            if (!hashes.get(i).equals(versions.get(i))) {
+                unstaged.add(tracked.get(i));
             }
         }
 
@@ -339,64 +812,205 @@ public class Repository {
 
         Utils.message("=== Modifications Not Staged For Commit ===");
         for (File f : unstaged) {
-            Utils.message(f.getName() + (f.exists() ? " (modified)" : " (deleted)"));
+            Utils.message(f.getPath() + (f.exists() ? " (modified)" : " (deleted)"));
         }
         Utils.message("");
 
         Utils.message("=== Untracked Files ===");
         for (File f : untracked) {
-            Utils.message(f.getName());
+            Utils.message(f.getPath());
         }
         Utils.message("");
     }
 
     /**
-     * CLEAR ALL PLAIN FILES IN CWD
+     * Shows the changes between two versions of the tracked files as unified
+     * diffs, see {@link Diff}, in the order of their paths.
+     * <p>
+     * With no commit, the files in the working directory are compared with
+     * the staging area, that is the current commit with the staged changes.
+     * With one commit, they are compared with that commit, and with two, the
+     * first commit is compared with the second, whose trees are compared
+     * first, see {@link Staged#delta(Commit, Commit)}, and renamed or copied
+     * files are shown as such, see {@link Renames}. Only files in the
+     * staging area are taken from the working directory, and they are only
+     * read if the {@link StatCache} shows they may differ.
+     *
+     * @param fromName commit to compare from, or null
+     * @param toName   commit to compare to, or null for the working directory
      */
-    private static void clearCWD() {
-        List<String> fileNames = Utils.plainFilenamesIn(CWD);
-        if (fileNames == null) {
+    public static void diff(String fromName, String toName) {
+        StringBuilder out = new StringBuilder();
+        if (toName != null) {
+            Commit from = commitNamed(fromName), to = commitNamed(toName);
+            Map<File, String> changes = Staged.delta(from, to).getChanges();
+            Renames renames = Renames.of(from, changes);
+            for (File f : new TreeSet<>(changes.keySet())) {
+                File renamed = renames.renamed().get(f), copied = renames.copied().get(f);
+                if (renamed != null || copied != null) {
+                    File source = renamed != null ? renamed : copied;
+                    String kind = renamed != null ? "rename" : "copy";
+                    diffFile(out, source, f, from.getFile(source), to.getFile(f), false,
+                            String.format("similarity index %d%%\n%s from %s\n%s to %s\n",
+                                    renames.score(f), kind, source, kind, f));
+                } else if (!renames.renamed().containsValue(f)) {
+                    diffFile(out, f, f, from.getFile(f), to.getFile(f), false, "");
+                }
+                Utils.flush(out, false);
+            }
+            Utils.flush(out, true);
             return;
         }
-        for (String fileName : fileNames) {
-            new File(fileName).delete();
+
+        Commit current = (Commit) GitletObject.read(getBranch(getRef("HEAD")));
+        Map<File, String> staged = new HashMap<>(current.getTracked());
+        for (Map.Entry<File, String> change : Staged.load().getChanges().entrySet()) {
+            if (change.getValue() == null) {
+                staged.remove(change.getKey());
+            } else {
+                staged.put(change.getKey(), change.getValue());
+            }
         }
+        Map<File, String> from = fromName == null ? staged : commitNamed(fromName).getTracked();
+        TreeSet<File> files = new TreeSet<>(from.keySet());
+        files.addAll(staged.keySet());
+        List<File> present = new ArrayList<>();
+        for (File f : files) {
+            if (staged.containsKey(f) && f.isFile()) {
+                present.add(f);
+            }
+        }
+        List<String> hashes = Workers.map(present, StatCache::sha1);
+        Map<File, String> working = new HashMap<>();
+        for (int i = 0; i < present.size(); i += 1) {
+            working.put(present.get(i), hashes.get(i));
+        }
+        for (File f : files) {
+            if (!Objects.equals(from.get(f), working.get(f))) {
+                diffFile(out, f, f, from.get(f), working.get(f), true, "");
+                Utils.flush(out, false);
+            }
+        }
+        Utils.flush(out, true);
+    }
+
+    /**
+     * Appends the unified diff of a version of file F and a version of file
+     * G to OUT, which are the same file unless G was renamed or copied from
+     * F, as described by HEADER. Versions are given by the SHA-1 values of
+     * their blobs, where null stands for a missing file; the second version
+     * is read from G itself if WORKING is true. Files containing a NUL byte
+     * are only reported to differ.
+     */
+    private static void diffFile(StringBuilder out, File f, File g, String from, String to,
+                                 boolean working, String header) {
+        out.append("diff --git a/").append(f.getPath()).append(" b/").append(g.getPath())
+                .append('\n').append(header);
+        if (Objects.equals(from, to)) {
+            return;
+        }
+        byte[] a = from == null ? new byte[0] : Blob.contentOf(from, Integer.MAX_VALUE),
+                b = to == null ? new byte[0]
+                        : working ? Utils.readContents(g) : Blob.contentOf(to, Integer.MAX_VALUE);
+        String aName = from == null ? "/dev/null" : "a/" + f.getPath(),
+                bName = to == null ? "/dev/null" : "b/" + g.getPath();
+        if (isBinary(a) || isBinary(b)) {
+            out.append("Binary files ").append(aName).append(" and ").append(bName)
+                    .append(" differ\n");
+            return;
+        }
+        List<String> aLines = Diff.lines(a), bLines = Diff.lines(b);
+        out.append("--- ").append(aName).append('\n');
+        out.append("+++ ").append(bName).append('\n');
+        Diff.unified(out, aLines, bLines, Diff.diff(aLines, bLines), Diff.CONTEXT);
+    }
+
+    /**
+     * Returns whether CONTENT looks binary, as it has a NUL byte among its
+     * first 8000 bytes, as in git.
+     */
+    private static boolean isBinary(byte[] content) {
+        for (int i = 0; i < Math.min(content.length, 8000); i += 1) {
+            if (content[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the commit with the specified, possibly abbreviated, SHA-1
+     * value, or ends the command if there is no such commit.
+     *
+     * @param commitName SHA-1 value of the commit
+     * @return the commit
+     */
+    private static Commit commitNamed(String commitName) {
+        GitletObject object = GitletObject.read(GitletObject.autocompleteCommit(commitName));
+        if (!(object instanceof Commit)) {
+            Utils.exit("No commit with that id exists.");
+        }
+        return (Commit) object;
     }
 
     /**
-     * WILL CLEAR CWD IN ADVANCE
      * Takes all files in the specified commit and puts them in CWD.
      * The staging area will also be cleared.
      * No specification on non-existent commit.
+     * <p>
+     * Only paths that differ between the current commit and the specified
+     * one are touched: files tracked only by the current commit are deleted,
+     * and files whose version differs, or that are missing, are written.
+     * Before anything is changed, the command fails if a file tracked by the
+     * specified commit has content other than its version in the current
+     * commit, which includes untracked files. Files are only hashed if the
+     * {@link StatCache} shows a change. Files are hashed, and blobs are read
+     * and written, by {@link Workers}.
      *
      * @param commitName commit to check out
      */
     private static void checkoutCommit(String commitName) {
         Commit current = (Commit) GitletObject.read(getBranch(getRef("HEAD")));
         Commit commit = (Commit) GitletObject.read(commitName);
-        if (Utils.plainFilenamesIn(CWD) != null) {
-            for (String s : Utils.plainFilenamesIn(CWD)) {
-                File f = new File(s);
-                if (!new Blob(f).sha1().equals(current.getFile(f)) && commit.hasFile(f)) {
-                    Utils.exit("There is an untracked file in the way;"
-                            + " delete it, or add and commit it first.");
-                }
+        assert commit != null;
+        Map<File, String> from = current.getTracked(), to = commit.getTracked();
+
+        List<File> changed = new ArrayList<>();
+        for (Map.Entry<File, String> track : to.entrySet()) {
+            File f = track.getKey();
+            if (!track.getValue().equals(from.get(f)) || !f.exists()) {
+                changed.add(f);
+            }
+        }
+        List<File> inTheWay = new ArrayList<>();
+        for (File f : workingFiles()) {
+            if (to.containsKey(f)) {
+                inTheWay.add(f);
+            }
+        }
+        List<String> hashes = Workers.map(inTheWay, StatCache::sha1);
+        for (int i = 0; i < inTheWay.size(); i += 1) {
+            if (!hashes.get(i).equals(from.get(inTheWay.get(i)))) {
+                Utils.exit("There is an untracked file in the way;"
+                        + " delete it, or add and commit it first.");
             }
         }
 
-        clearCWD();
-
-        assert commit != null;
-        for (Map.Entry<File, String> track : commit.getTracked().entrySet()) {
-            ((Blob) GitletObject.read(track.getValue())).saveAs(track.getKey());
+        for (File f : from.keySet()) {
+            if (!to.containsKey(f)) {
+                deleteWorkingFile(f);
+            }
         }
-        Staged stagingArea = (Staged) GitletObject.readAndDeleteUnused(getRef("STAGED"));
+        Workers.forEach(changed, f -> {
+            ((Blob) GitletObject.read(to.get(f))).saveAs(f);
+            StatCache.update(f, to.get(f));
+        });
+        Staged stagingArea = Staged.load();
         stagingArea.clear();
         stagingArea.store();
     }
 
     /**
-     * WILL CLEAR CWD IN ADVANCE
      * Takes all files in the commit at the head of the given branch, and puts
      * them in the working directory, overwriting the versions of the files that
      * are already there if they exist.
@@ -425,9 +1039,9 @@ public class Repository {
      * @param fileName   file to check out
      */
     public static void checkoutFile(String commitName, String fileName) {
-        commitName = GitletObject.autocomplete(commitName);
+        commitName = GitletObject.autocompleteCommit(commitName);
         GitletObject object = GitletObject.read(commitName);
-        if (object == null) {
+        if (!(object instanceof Commit)) {
             Utils.exit("No commit with that id exists.");
         }
 
@@ -437,6 +1051,7 @@ public class Repository {
             Utils.exit("File does not exist in that commit.");
         }
         ((Blob) GitletObject.read(commit.getFile(f))).saveAs(f);
+        StatCache.update(f, commit.getFile(f));
     }
 
     /**
@@ -478,26 +1093,61 @@ public class Repository {
      * @param commitName commit to reset to
      */
     public static void reset(String commitName) {
-        commitName = GitletObject.autocomplete(commitName);
-        if (commitName == null) {
+        commitName = GitletObject.autocompleteCommit(commitName);
+        if (!(GitletObject.read(commitName) instanceof Commit)) {
             Utils.exit("No commit with that id exists.");
         }
         checkoutCommit(commitName);
         setBranch(getRef("HEAD"), commitName);
     }
 
+    /**
+     * Merges three versions of file F, given by the SHA-1 values of their
+     * blobs, line by line into F, see {@link LineMerge}. BASE is null if the
+     * file was added in both branches. Files containing a NUL byte are not
+     * merged, and are a conflict of the whole files. If one version is
+     * that of the base, the other one is taken without reading either.
+     *
+     * @return true if there were conflicts
+     */
+    private static boolean mergeLines(File f, String base, String current, String given) {
+        if (current.equals(given) || given.equals(base)) {
+            ((Blob) GitletObject.read(current)).saveAs(f);
+            return false;
+        } else if (current.equals(base)) {
+            ((Blob) GitletObject.read(given)).saveAs(f);
+            return false;
+        }
+        byte[] o = base == null ? new byte[0] : Blob.contentOf(base, Integer.MAX_VALUE),
+                a = Blob.contentOf(current, Integer.MAX_VALUE),
+                b = Blob.contentOf(given, Integer.MAX_VALUE);
+        if (isBinary(o) || isBinary(a) || isBinary(b)) {
+            Blob.conflict(current, given).saveAs(f);
+            return true;
+        }
+        LineMerge merged = LineMerge.of(o, a, b);
+        new Blob(merged.content()).saveAs(f);
+        return merged.conflicts() > 0;
+    }
+
     /**
      * Merges the specified branch to current branch.
      * For each file, if it is changed in exactly one branch
      * since the diverged point, checks it out and stages it
      * for commit; if it is changed in both branches but in
-     * the same way, leaves it as it is; otherwise, it is
-     * considered to be a conflict.
+     * the same way, leaves it as it is; if it is modified
+     * differently in both, the changes are merged line by
+     * line, see {@link LineMerge}, and only overlapping
+     * changes are conflicts; otherwise, that is if it is
+     * deleted in one branch, it is a conflict as a whole.
+     * A file renamed in one branch, see {@link Renames},
+     * and modified in the other is merged in the same way
+     * under its new name, and its old name is removed.
      *
      * @param branchName branch to merge with
      */
     public static void merge(String branchName) {
-        Staged staged = (Staged) GitletObject.read(getRef("STAGED"));
+        Staged staged = Staged.load();
         if (!staged.isEmpty()) {
             Utils.exit("You have uncommitted changes.");
         }
@@ -531,37 +1181,85 @@ public class Repository {
         changedFiles.addAll(List.of(deltaThis.stagedFiles()));
         changedFiles.addAll(List.of(deltaThat.stagedFiles()));
 
-        if (Utils.plainFilenamesIn(CWD) != null) {
-            for (String s : Utils.plainFilenamesIn(CWD)) {
-                File f = new File(s);
-                if (!new Blob(f).sha1().equals(current.getFile(f)) && changedFiles.contains(f)) {
-                    Utils.exit("There is an untracked file in the way;"
-                            + " delete it, or add and commit it first.");
-                }
+        Map<File, File> moved = new HashMap<>();
+        for (Map.Entry<File, File> rename
+                : Renames.of(div, deltaThat.getChanges()).renamed().entrySet()) {
+            File f = rename.getValue();
+            if (deltaThis.getFile(f) != null && current.getFile(rename.getKey()) == null) {
+                moved.put(rename.getKey(), f);
+            }
+        }
+        for (Map.Entry<File, File> rename
+                : Renames.of(div, deltaThis.getChanges()).renamed().entrySet()) {
+            File f = rename.getValue();
+            if (deltaThat.getFile(f) != null && branch.getFile(rename.getKey()) == null) {
+                moved.put(rename.getKey(), f);
             }
         }
+        Set<File> movedFiles = new HashSet<>(moved.keySet());
+        movedFiles.addAll(moved.values());
+
+        List<File> inTheWay = new ArrayList<>();
+        for (File f : workingFiles()) {
+            if (changedFiles.contains(f)) {
+                inTheWay.add(f);
+            }
+        }
+        List<String> hashes = Workers.map(inTheWay, StatCache::sha1);
+        for (int i = 0; i < inTheWay.size(); i += 1) {
+            if (!hashes.get(i).equals(current.getFile(inTheWay.get(i)))) {
+                Utils.exit("There is an untracked file in the way;"
+                        + " delete it, or add and commit it first.");
+            }
+        }
+
+        List<File> fromBranch = new ArrayList<>();
+        for (File f : changedFiles) {
+            if (!deltaThis.hasFile(f) && deltaThat.hasFile(f) && branch.getFile(f) != null
+                    && !movedFiles.contains(f)) {
+                fromBranch.add(f);
+            }
+        }
+        Workers.forEach(fromBranch, f -> {
+            ((Blob) GitletObject.read(branch.getFile(f))).saveAs(f);
+            StatCache.update(f, branch.getFile(f));
+        });
 
         boolean encounteredConflict = false;
+        for (Map.Entry<File, File> move : moved.entrySet()) {
+            File g = move.getKey(), f = move.getValue();
+            String inThis = current.getFile(g) != null ? current.getFile(g) : current.getFile(f),
+                    inThat = branch.getFile(g) != null ? branch.getFile(g) : branch.getFile(f);
+            encounteredConflict |= mergeLines(g, div.getFile(f), inThis, inThat);
+            staged.add(current, g);
+            if (current.getFile(f) != null) {
+                deleteWorkingFile(f);
+                staged.stageForRemoval(f);
+            }
+        }
         for (File f : changedFiles) {
-            if (deltaThis.hasFile(f) && deltaThat.hasFile(f)) {
+            if (movedFiles.contains(f)) {
+                continue;
+            } else if (deltaThis.hasFile(f) && deltaThat.hasFile(f)) {
                 String inThis = deltaThis.getFile(f),
                         inThat = deltaThat.getFile(f);
 
                 if ((inThis == null && inThat != null)
                         || (inThis != null && !inThis.equals(inThat))) {
-                    Blob.conflict(current.getFile(f), branch.getFile(f)).saveAs(f);
-                    encounteredConflict = true;
+                    if (inThis != null && inThat != null) {
+                        encounteredConflict |= mergeLines(f, div.getFile(f), inThis, inThat);
+                    } else {
+                        Blob.conflict(current.getFile(f), branch.getFile(f)).saveAs(f);
+                        encounteredConflict = true;
+                    }
                     staged.add(current, f);
                 }
             } else if (deltaThat.hasFile(f)) {
                 String s = branch.getFile(f);
                 if (s == null) {
-                    if (f.exists()) {
-                        f.delete();
-                    }
+                    deleteWorkingFile(f);
                     staged.stageForRemoval(f);
                 } else {
-                    ((Blob) GitletObject.read(s)).saveAs(f);
                     staged.add(current, f);
                 }
             }
@@ -1,18 +1,47 @@
 package gitlet;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Represents the staging area and can be converted to a commit.<br>
- * The purpose of implementing GitletObject is to make sure a Stage object
- * can be stored like a GitletObject.
+ * The purpose of implementing GitletObject is to make sure Stage objects
+ * stored by earlier versions can still be read.
+ * <p>
+ * The staging area is kept in the index file {@code <Repository.GITLET_DIR>/INDEX}
+ * rather than in the object store, so changing it never leaves objects behind.
+ * The file is replaced atomically whenever the staging area is saved. Like
+ * commits, it is written in a binary format: a format version byte and the
+ * number of staged files as a 4-byte integer, followed by the path of each
+ * file in the format of {@link Commit}, sorted by path, and a byte that is 1
+ * if the file is staged for addition and then followed by its 20-byte SHA-1
+ * value, or 0 if it is staged for removal.
  *
  * @author Fei Pan
  */
 public class Staged implements GitletObject {
+    /**
+     * Fixed so that objects stored by earlier versions can still be read.
+     */
+    private static final long serialVersionUID = 7389484454952924941L;
+    /**
+     * Version of the binary format written by {@link Staged#encode()}.
+     */
+    static final int FORMAT_VERSION = 1;
+    /**
+     * The index file.
+     */
+    static final File INDEX_FILE = Utils.join(Repository.GITLET_DIR, "INDEX");
+
     /**
      * Used to store staged changes.
      * A null key means the specified file is to be removed.
@@ -30,15 +59,49 @@ public class Staged implements GitletObject {
     }
 
     /**
-     * Set the STAGED ref to self as well as store.
+     * Returns the staging area saved in the index file.
+     * <p>
+     * Earlier versions stored the staging area in the object store, pointed to
+     * by the {@code STAGED} ref, and left old versions of it behind. If there
+     * is no index file but such a ref, the staging area it points to is moved
+     * into the index file, and all staging areas in the object store are
+     * deleted. This is done once and reads every loose object.
      *
-     * @return SHA-1 value of the object
-     * @see GitletObject#store
+     * @return the staging area
+     */
+    public static Staged load() {
+        if (INDEX_FILE.exists()) {
+            try {
+                return decode(Utils.readContents(INDEX_FILE));
+            } catch (BufferUnderflowException excp) {
+                throw Utils.error("Index file is corrupt.");
+            }
+        }
+        File ref = Utils.join(Repository.GITLET_DIR, "STAGED");
+        Staged result = ref.exists()
+                ? (Staged) GitletObject.read(Utils.readContentsAsString(ref)) : new Staged();
+        result.store();
+        for (String objectName : GitletObject.listLoose()) {
+            if (GitletObject.read(objectName) instanceof Staged) {
+                GitletObject.delete(objectName);
+            }
+        }
+        ref.delete();
+        return result;
+    }
+
+    /**
+     * Saves the staging area to the index file, which is replaced atomically,
+     * see {@link Durable}. Nothing is written to the object store.
+     *
+     * @return SHA-1 value of the staging area
      */
     @Override
     public String store() {
-        Repository.setRef("STAGED", sha1());
-        return GitletObject.super.store();
+        File temp = Utils.join(Repository.GITLET_DIR, "INDEX.tmp");
+        Utils.writeContents(temp, (Object) encode());
+        Durable.replace(temp, INDEX_FILE);
+        return sha1();
     }
 
     public HashMap<File, String> getChanges() {
@@ -46,13 +109,61 @@ public class Staged implements GitletObject {
     }
 
     public String sha1() {
-        return Utils.sha1((Object) Utils.serialize(changes));
+        return Utils.sha1((Object) encode());
+    }
+
+    /**
+     * Returns the binary encoding of this staging area, see {@link Staged}.
+     *
+     * @return the payload of the staging area
+     */
+    byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            List<File> files = new ArrayList<>(changes.keySet());
+            files.sort(Comparator.comparing(File::getPath));
+            out.writeInt(files.size());
+            for (File f : files) {
+                Utils.writeString(out, f.getPath());
+                String s = changes.get(f);
+                out.writeByte(s == null ? 0 : 1);
+                if (s != null) {
+                    Utils.writeSha1(out, s);
+                }
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding staging area.");
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Returns the staging area encoded in the specified payload.
+     *
+     * @param payload the payload of a staging area, see {@link Staged#encode()}
+     * @return the staging area
+     */
+    static Staged decode(byte[] payload) {
+        ByteBuffer in = ByteBuffer.wrap(payload);
+        int version = in.get();
+        if (version != FORMAT_VERSION) {
+            throw Utils.error("Unknown staging area format version %d.", version);
+        }
+        Staged result = new Staged();
+        for (int n = in.getInt(); n > 0; n -= 1) {
+            File f = new File(Utils.readString(in));
+            result.changes.put(f, in.get() == 0 ? null : Utils.readSha1(in));
+        }
+        return result;
     }
 
     /**
      * Add a file to the staging area.
      * If the modified file is identical to what it is in the current commit,
-     * remove it from the staging area if it is there.
+     * remove it from the staging area if it is there. A new version of a
+     * file may be stored as a delta against its version in the current commit.
+     * The file is not read if the {@link StatCache} shows it is unchanged.
      *
      * @param current current commit
      * @param file    the file to be added
@@ -61,12 +172,23 @@ public class Staged implements GitletObject {
         if (!file.exists()) {
             Utils.exit("File does not exist.");
         }
-        Blob b = new Blob(file);
-        if (b.sha1().equals(current.getFile(file))) {
+        add(current, file, StatCache.sha1(file));
+    }
+
+    /**
+     * Add a file whose SHA-1 value is already known to the staging area.
+     *
+     * @param current current commit
+     * @param file    the file to be added, which must exist
+     * @param s       SHA-1 value of the content of the file
+     * @see Staged#add(Commit, File)
+     */
+    public void add(Commit current, File file, String s) {
+        if (s.equals(current.getFile(file))) {
             changes.remove(file);
         } else {
-            changes.put(file, b.sha1());
-            b.store();
+            changes.put(file, s);
+            Blob.ofFile(file, s).store(current.getFile(file));
         }
     }
 
@@ -157,7 +279,8 @@ public class Staged implements GitletObject {
 
     /**
      * Returns a {@link Staged} object represents difference of derived
-     * from base.
+     * from base. If both commits have stored trees, only the trees that
+     * differ between them are read, see {@link Tree#diff(String, String, File, Map)}.
      *
      * @param base    the base commit
      * @param derived the derived commit
@@ -165,6 +288,10 @@ public class Staged implements GitletObject {
      */
     public static Staged delta(Commit base, Commit derived) {
         Staged result = new Staged();
+        if (base.hasTree() && derived.hasTree()) {
+            Tree.diff(base.getTree(), derived.getTree(), null, result.changes);
+            return result;
+        }
 
         for (Map.Entry<File, String> track : derived.getTracked().entrySet()) {
             File f = track.getKey();
@@ -0,0 +1,38 @@
+package gitlet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+
+/**
+ * Used to test functionality of {@link Staged}.
+ *
+ * @author Fei Pan
+ */
+public class StagedTest {
+    /**
+     * Check whether staging areas stored by earlier versions, with and
+     * without a header, under the SHA-1 value of their serialized changes,
+     * are not reported as corrupt.
+     */
+    @Test
+    public void testVerifyLegacy() {
+        for (boolean headerless : new boolean[]{false, true}) {
+            Staged staged = new Staged();
+            staged.getChanges().put(new File("legacy.txt"), Utils.sha1("legacy " + headerless));
+            staged.getChanges().put(new File("removed.txt"), null);
+            byte[] serialized = Utils.serialize(staged);
+            String s = Utils.sha1((Object) Utils.serialize(staged.getChanges()));
+            GitletObject.delete(s);
+            if (headerless) {
+                GitletObject.getPath(s).getParentFile().mkdirs();
+                Utils.writeContents(GitletObject.getPath(s), (Object) serialized);
+            } else {
+                GitletObject.store(s, GitletObject.TYPE_SERIALIZED, serialized);
+            }
+            Assert.assertTrue(GitletObject.verify(s));
+            GitletObject.delete(s);
+        }
+    }
+}
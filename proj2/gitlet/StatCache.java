@@ -0,0 +1,241 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches SHA-1 values of files in the working directory, so that files
+ * that have not changed since they were last hashed are not read again.
+ * <p>
+ * The cache is stored in {@code <Repository.GITLET_DIR>/STAT}. It consists
+ * of a format version byte and the number of entries as a 4-byte integer,
+ * followed by the entries. Each entry is the path of a file in the format of
+ * {@link Commit}, the size, the modification time in nanoseconds and the
+ * inode number of the file as 8-byte integers, and the 20-byte SHA-1 value
+ * of its content. The inode number is 0 where the file system has none.
+ * <p>
+ * A cached SHA-1 value is used only if the size, modification time and inode
+ * number of the file are unchanged, and the file was last modified before the
+ * cache was written. A file modified within the resolution of file times
+ * after it was hashed may look unchanged, so such a file is hashed again
+ * until the cache is written at a later time.
+ * <p>
+ * Files may be looked up and updated from many threads at once, see
+ * {@link Workers}. Saving the cache must not overlap with either.
+ *
+ * @author Fei Pan
+ */
+public class StatCache {
+    /**
+     * The cache file.
+     */
+    static final File STAT_FILE = Utils.join(Repository.GITLET_DIR, "STAT");
+    /**
+     * Version of the format of the cache file.
+     */
+    static final int FORMAT_VERSION = 1;
+
+    /**
+     * Cached entries by path, or null if the cache has not been loaded.
+     */
+    private static volatile Map<String, Entry> entries;
+    /**
+     * Modification time in nanoseconds of the cache file when it was loaded.
+     */
+    private static volatile long written;
+    /**
+     * Whether entries have changed since the cache was loaded.
+     */
+    private static volatile boolean changed;
+
+    /**
+     * Returns the SHA-1 value of the content of the specified file,
+     * which must exist. The file is only read if the cache does not
+     * have an up-to-date SHA-1 value for it.
+     *
+     * @param f file in the working directory
+     * @return SHA-1 value of the content of the file
+     */
+    public static String sha1(File f) {
+        Entry stat = stat(f);
+        Entry cached = entries().get(f.getPath());
+        if (cached != null && cached.sameFile(stat) && stat.mtime < written) {
+            return cached.sha1;
+        }
+        stat.sha1 = new Blob(f).sha1();
+        entries().put(f.getPath(), stat);
+        changed = true;
+        return stat.sha1;
+    }
+
+    /**
+     * Records the SHA-1 value of the specified file, which has just been
+     * written with content of that SHA-1 value.
+     *
+     * @param f    file in the working directory
+     * @param sha1 SHA-1 value of the content of the file
+     */
+    public static void update(File f, String sha1) {
+        Entry stat = stat(f);
+        stat.sha1 = sha1;
+        entries().put(f.getPath(), stat);
+        changed = true;
+    }
+
+    /**
+     * Writes the cache back if it has changed. Entries of files that no
+     * longer exist are dropped.
+     */
+    public static void save() {
+        if (!changed) {
+            return;
+        }
+        entries.keySet().removeIf(path -> !new File(path).exists());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                Utils.writeString(out, e.getKey());
+                out.writeLong(entry.size);
+                out.writeLong(entry.mtime);
+                out.writeLong(entry.inode);
+                Utils.writeSha1(out, entry.sha1);
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding stat cache.");
+        }
+        File temp = Utils.join(Repository.GITLET_DIR, "STAT.tmp");
+        Utils.writeContents(temp, (Object) bytes.toByteArray());
+        try {
+            Files.move(temp.toPath(), STAT_FILE.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        entries = null;
+        changed = false;
+    }
+
+    /**
+     * Returns the cached entries, loading them if necessary. A missing
+     * or unreadable cache file is treated as empty.
+     *
+     * @return the entries by path
+     */
+    private static Map<String, Entry> entries() {
+        Map<String, Entry> loaded = entries;
+        return loaded != null ? loaded : load();
+    }
+
+    /**
+     * Loads the cached entries unless another thread has just done so.
+     *
+     * @return the entries by path
+     */
+    private static synchronized Map<String, Entry> load() {
+        if (entries != null) {
+            return entries;
+        }
+        Map<String, Entry> loaded = new ConcurrentHashMap<>();
+        written = Long.MIN_VALUE;
+        if (STAT_FILE.exists()) {
+            try {
+                written = Files.getLastModifiedTime(STAT_FILE.toPath())
+                        .to(TimeUnit.NANOSECONDS);
+                ByteBuffer in = ByteBuffer.wrap(Utils.readContents(STAT_FILE));
+                if (in.get() == FORMAT_VERSION) {
+                    for (int n = in.getInt(); n > 0; n -= 1) {
+                        String path = Utils.readString(in);
+                        Entry entry = new Entry(in.getLong(), in.getLong(), in.getLong());
+                        entry.sha1 = Utils.readSha1(in);
+                        loaded.put(path, entry);
+                    }
+                }
+            } catch (IOException | RuntimeException excp) {
+                loaded.clear();
+            }
+        }
+        entries = loaded;
+        return entries;
+    }
+
+    /**
+     * Returns an entry without SHA-1 value describing the specified file
+     * as it is now.
+     *
+     * @param f file to describe
+     * @return an entry
+     */
+    private static Entry stat(File f) {
+        Path p = f.toPath();
+        try {
+            try {
+                Map<String, Object> attributes =
+                        Files.readAttributes(p, "unix:size,lastModifiedTime,ino");
+                return new Entry((Long) attributes.get("size"),
+                        ((FileTime) attributes.get("lastModifiedTime")).to(TimeUnit.NANOSECONDS),
+                        (Long) attributes.get("ino"));
+            } catch (UnsupportedOperationException excp) {
+                BasicFileAttributes attributes =
+                        Files.readAttributes(p, BasicFileAttributes.class);
+                return new Entry(attributes.size(),
+                        attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS), 0);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * What is known about a file: its size, modification time, inode number
+     * and the SHA-1 value of its content.
+     */
+    private static class Entry {
+        /**
+         * Size of the file in bytes.
+         */
+        private final long size;
+        /**
+         * Modification time of the file in nanoseconds.
+         */
+        private final long mtime;
+        /**
+         * Inode number of the file, or 0.
+         */
+        private final long inode;
+        /**
+         * SHA-1 value of the content of the file.
+         */
+        private String sha1;
+
+        /**
+         * Creates an entry with the specified SIZE, MTIME and INODE.
+         */
+        Entry(long size, long mtime, long inode) {
+            this.size = size;
+            this.mtime = mtime;
+            this.inode = inode;
+        }
+
+        /**
+         * Returns true iff OTHER has the same size, modification time and
+         * inode number as this entry.
+         */
+        boolean sameFile(Entry other) {
+            return size == other.size && mtime == other.mtime && inode == other.inode;
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Represents a directory tracked by a commit, mimicking tree objects in
+ * real git.<br>
+ * A Tree object maps the names of the files in a directory to the SHA-1
+ * values of their blobs, and the names of its subdirectories to the SHA-1
+ * values of their trees. A commit only stores the SHA-1 value of its root
+ * tree, see {@link Commit}, so a new commit stores new trees for the
+ * directories on the paths of the files it changes and shares all other
+ * trees with its parent. Trees are immutable and never empty, except for
+ * the root tree of a commit tracking no files.
+ * <p>
+ * The payload is a format version byte, the number of files as a 4-byte
+ * integer followed by their names and 20-byte SHA-1 values, and the number
+ * of subdirectories as a 4-byte integer followed by their names and 20-byte
+ * SHA-1 values, both sorted by name. Names are strings in the format of
+ * {@link Commit}. The SHA-1 value of a tree is that of its payload.
+ *
+ * @author Fei Pan
+ */
+public class Tree implements GitletObject {
+    /**
+     * Fixed, as for the other objects, although trees are never serialized.
+     */
+    private static final long serialVersionUID = 2906632117254187453L;
+    /**
+     * Version of the binary format written by {@link Tree#encode()}.
+     */
+    static final int FORMAT_VERSION = 1;
+
+    /**
+     * SHA-1 values of the blobs of the files in this directory, by name.
+     */
+    private final TreeMap<String, String> files;
+    /**
+     * SHA-1 values of the trees of the subdirectories, by name.
+     */
+    private final TreeMap<String, String> dirs;
+    /**
+     * The SHA-1 value of this Tree, or null if it has not been computed yet.
+     */
+    private transient String sha1;
+
+    /**
+     * Creates a Tree.
+     *
+     * @param files SHA-1 values of blobs by file name
+     * @param dirs  SHA-1 values of trees by directory name
+     */
+    Tree(TreeMap<String, String> files, TreeMap<String, String> dirs) {
+        this.files = files;
+        this.dirs = dirs;
+    }
+
+    /**
+     * Returns SHA-1 value of this tree, which is computed on the first call.
+     *
+     * @return SHA-1 value of the tree
+     */
+    public String sha1() {
+        if (sha1 == null) {
+            sha1 = Utils.sha1((Object) encode());
+        }
+        return sha1;
+    }
+
+    /**
+     * Stores the tree in the binary format.
+     *
+     * @return SHA-1 value of the tree
+     */
+    @Override
+    public String store() {
+        byte[] payload = encode();
+        if (sha1 == null) {
+            sha1 = Utils.sha1((Object) payload);
+        }
+        return GitletObject.store(sha1, TYPE_TREE, payload);
+    }
+
+    /**
+     * Returns the binary encoding of this tree, see {@link Tree}.
+     *
+     * @return the payload of the tree
+     */
+    byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            for (TreeMap<String, String> entries : List.of(files, dirs)) {
+                out.writeInt(entries.size());
+                for (Map.Entry<String, String> entry : entries.entrySet()) {
+                    Utils.writeString(out, entry.getKey());
+                    Utils.writeSha1(out, entry.getValue());
+                }
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Internal error encoding tree.");
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Returns the tree encoded in the specified payload.
+     *
+     * @param payload the payload of a tree, see {@link Tree#encode()}
+     * @return the tree
+     */
+    static Tree decode(byte[] payload) {
+        ByteBuffer in = ByteBuffer.wrap(payload);
+        int version = in.get();
+        if (version != FORMAT_VERSION) {
+            throw Utils.error("Unknown tree format version %d.", version);
+        }
+        List<TreeMap<String, String>> entries = List.of(new TreeMap<>(), new TreeMap<>());
+        for (TreeMap<String, String> map : entries) {
+            for (int n = in.getInt(); n > 0; n -= 1) {
+                map.put(Utils.readString(in), Utils.readSha1(in));
+            }
+        }
+        return new Tree(entries.get(0), entries.get(1));
+    }
+
+    /**
+     * Remembers the SHA-1 value of a tree just read from the object store.
+     *
+     * @param s name of the tree in the object store
+     */
+    void identify(String s) {
+        sha1 = s;
+    }
+
+    /**
+     * Estimates the size of this tree from the lengths of its names.
+     *
+     * @return estimated size in bytes
+     */
+    @Override
+    public long footprint() {
+        long result = 128;
+        for (TreeMap<String, String> entries : List.of(files, dirs)) {
+            for (String name : entries.keySet()) {
+                result += 160 + 2L * name.length();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the SHA-1 value of the root tree of the specified files,
+     * storing every tree if STORE is true.
+     *
+     * @param tracked SHA-1 values of blobs by path
+     * @param store   whether to store the trees
+     * @return SHA-1 value of the root tree
+     */
+    static String build(Map<File, String> tracked, boolean store) {
+        return update(null, tracked, store);
+    }
+
+    /**
+     * Returns the SHA-1 value of the root tree obtained by applying the
+     * specified changes to the tree with SHA-1 value root. Only the trees of
+     * the directories containing a changed file are read and written; the
+     * others are shared. Directories left without files are dropped.
+     *
+     * @param root    SHA-1 value of the root tree, or null for no files
+     * @param changes SHA-1 values of blobs by path, null for a removed file
+     * @param store   whether to store the new trees
+     * @return SHA-1 value of the new root tree
+     */
+    static String update(String root, Map<File, String> changes, boolean store) {
+        Map<List<String>, String> byNames = new LinkedHashMap<>();
+        for (Map.Entry<File, String> change : changes.entrySet()) {
+            byNames.put(names(change.getKey()), change.getValue());
+        }
+        String result = update(root, byNames, 0, store);
+        return result != null ? result : write(new Tree(new TreeMap<>(), new TreeMap<>()), store);
+    }
+
+    /**
+     * Applies CHANGES, keyed by the names on their paths, to the tree with
+     * SHA-1 value S at DEPTH, and returns the SHA-1 value of the new tree,
+     * or null if it has no files. New trees are stored if STORE is true.
+     */
+    private static String update(String s, Map<List<String>, String> changes,
+                                 int depth, boolean store) {
+        Tree base = s == null ? null : get(s);
+        TreeMap<String, String> files = base == null ? new TreeMap<>() : new TreeMap<>(base.files),
+                dirs = base == null ? new TreeMap<>() : new TreeMap<>(base.dirs);
+        Map<String, Map<List<String>, String>> below = new TreeMap<>();
+        for (Map.Entry<List<String>, String> change : changes.entrySet()) {
+            List<String> names = change.getKey();
+            String name = names.get(depth);
+            if (names.size() == depth + 1) {
+                if (change.getValue() == null) {
+                    files.remove(name);
+                } else {
+                    files.put(name, change.getValue());
+                }
+            } else {
+                below.computeIfAbsent(name, k -> new LinkedHashMap<>())
+                        .put(names, change.getValue());
+            }
+        }
+        for (Map.Entry<String, Map<List<String>, String>> dir : below.entrySet()) {
+            String name = dir.getKey();
+            String updated = update(dirs.get(name), dir.getValue(), depth + 1, store);
+            if (updated == null) {
+                dirs.remove(name);
+            } else {
+                dirs.put(name, updated);
+            }
+        }
+        if (files.isEmpty() && dirs.isEmpty()) {
+            return null;
+        }
+        return write(new Tree(files, dirs), store);
+    }
+
+    /**
+     * Returns the SHA-1 value of TREE, storing it if STORE is true.
+     */
+    private static String write(Tree tree, boolean store) {
+        return store ? tree.store() : tree.sha1();
+    }
+
+    /**
+     * Returns the SHA-1 value of the blob of the specified file in the tree
+     * with SHA-1 value root. Only the trees on the path of the file are read.
+     *
+     * @param root SHA-1 value of the root tree
+     * @param f    file to look up
+     * @return SHA-1 value of the blob, or null if the file is not in the tree
+     */
+    static String lookup(String root, File f) {
+        List<String> names = names(f);
+        Tree tree = get(root);
+        for (String name : names.subList(0, names.size() - 1)) {
+            String s = tree.dirs.get(name);
+            if (s == null) {
+                return null;
+            }
+            tree = get(s);
+        }
+        return tree.files.get(names.get(names.size() - 1));
+    }
+
+    /**
+     * Adds every file in the tree with SHA-1 value s, which is the tree of
+     * the directory DIR, to RESULT, mapped to the SHA-1 value of its blob.
+     *
+     * @param s      SHA-1 value of the tree
+     * @param dir    directory of the tree, or null for the root tree
+     * @param result map to add the files to
+     */
+    static void flatten(String s, File dir, Map<File, String> result) {
+        Tree tree = get(s);
+        for (Map.Entry<String, String> entry : tree.files.entrySet()) {
+            result.put(child(dir, entry.getKey()), entry.getValue());
+        }
+        for (Map.Entry<String, String> entry : tree.dirs.entrySet()) {
+            flatten(entry.getValue(), child(dir, entry.getKey()), result);
+        }
+    }
+
+    /**
+     * Adds the changes from the tree with SHA-1 value a to the tree with
+     * SHA-1 value b, which are trees of the directory DIR, to RESULT. A file
+     * changed or added is mapped to its SHA-1 value in b, and a file removed
+     * to null. Subtrees that are the same in both trees are skipped without
+     * being read.
+     *
+     * @param a      SHA-1 value of the old tree, or null for no files
+     * @param b      SHA-1 value of the new tree, or null for no files
+     * @param dir    directory of the trees, or null for the root tree
+     * @param result map to add the changes to
+     */
+    static void diff(String a, String b, File dir, Map<File, String> result) {
+        if (Objects.equals(a, b)) {
+            return;
+        }
+        Tree from = a == null ? null : get(a), to = b == null ? null : get(b);
+        TreeMap<String, String> fromFiles = from == null ? new TreeMap<>() : from.files,
+                toFiles = to == null ? new TreeMap<>() : to.files,
+                fromDirs = from == null ? new TreeMap<>() : from.dirs,
+                toDirs = to == null ? new TreeMap<>() : to.dirs;
+        Set<String> names = new TreeSet<>(fromFiles.keySet());
+        names.addAll(toFiles.keySet());
+        for (String name : names) {
+            if (!Objects.equals(fromFiles.get(name), toFiles.get(name))) {
+                result.put(child(dir, name), toFiles.get(name));
+            }
+        }
+        names = new TreeSet<>(fromDirs.keySet());
+        names.addAll(toDirs.keySet());
+        for (String name : names) {
+            diff(fromDirs.get(name), toDirs.get(name), child(dir, name), result);
+        }
+    }
+
+    /**
+     * Adds the SHA-1 values of the tree with SHA-1 value s and of its
+     * subtrees to REACHABLE, and those of the blobs in them to BLOBS.
+     * Trees already in REACHABLE are skipped, so trees shared by many
+     * commits are read once.
+     *
+     * @param s         SHA-1 value of the tree
+     * @param reachable objects found to be reachable
+     * @param blobs     collection to add the blobs to
+     */
+    static void reachable(String s, Set<String> reachable, Collection<String> blobs) {
+        if (!reachable.add(s)) {
+            return;
+        }
+        Tree tree = get(s);
+        blobs.addAll(tree.files.values());
+        for (String dir : tree.dirs.values()) {
+            reachable(dir, reachable, blobs);
+        }
+    }
+
+    /**
+     * Returns the stored tree with SHA-1 value S, failing if it is missing.
+     */
+    private static Tree get(String s) {
+        GitletObject object = GitletObject.read(s);
+        if (!(object instanceof Tree)) {
+            throw Utils.error("Tree %s is missing.", s);
+        }
+        return (Tree) object;
+    }
+
+    /**
+     * Returns the names on the path of F, from the outermost directory,
+     * leaving out {@code .} components.
+     */
+    private static List<String> names(File f) {
+        List<String> result = new ArrayList<>();
+        for (File g = f; g != null; g = g.getParentFile()) {
+            if (!g.getName().isEmpty() && !g.getName().equals(".")) {
+                result.add(g.getName());
+            }
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Returns the file named NAME in DIR, which is null for the root.
+     */
+    private static File child(File dir, String name) {
+        return dir == null ? new File(name) : new File(dir, name);
+    }
+}
@@ -0,0 +1,100 @@
+package gitlet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Used to test functionality of {@link Tree}.
+ *
+ * @author Fei Pan
+ */
+public class TreeTest {
+    /**
+     * Check whether a commit changing one file shares the trees of the
+     * directories it does not change, and whether the files and the
+     * changes read back from the trees are those committed.
+     */
+    @Test
+    public void testSharedSubtrees() {
+        HashMap<File, String> tracked = new HashMap<>();
+        tracked.put(new File("top.txt"), Utils.sha1("top"));
+        tracked.put(new File("a/one.txt"), Utils.sha1("one"));
+        tracked.put(new File("a/b/two.txt"), Utils.sha1("two"));
+        tracked.put(new File("c/three.txt"), Utils.sha1("three"));
+        Commit base = new Commit("trees", new Date(1000L), tracked, new String[0]);
+        base.store();
+
+        Staged staged = new Staged();
+        staged.getChanges().put(new File("a/b/two.txt"), Utils.sha1("changed"));
+        staged.stageForRemoval(new File("c/three.txt"));
+        Commit next = base.nextCommit("next", staged);
+        next.store();
+
+        Set<String> before = new HashSet<>(), after = new HashSet<>();
+        Tree.reachable(base.getTree(), before, new ArrayList<>());
+        Tree.reachable(next.getTree(), after, new ArrayList<>());
+        Assert.assertEquals(4, before.size());
+        Assert.assertEquals(3, after.size());
+        after.retainAll(before);
+        Assert.assertTrue(after.isEmpty());
+
+        Commit read = (Commit) GitletObject.read(next.sha1());
+        Assert.assertEquals(Utils.sha1("changed"), read.getFile(new File("a/b/two.txt")));
+        Assert.assertEquals(Utils.sha1("one"), read.getFile(new File("a/one.txt")));
+        Assert.assertNull(read.getFile(new File("c/three.txt")));
+        Assert.assertFalse(read.hasFile(new File("c")));
+        Assert.assertEquals(3, read.getTracked().size());
+
+        Map<File, String> changes = Staged.delta(base, read).getChanges();
+        Assert.assertEquals(2, changes.size());
+        Assert.assertEquals(Utils.sha1("changed"), changes.get(new File("a/b/two.txt")));
+        Assert.assertTrue(changes.containsKey(new File("c/three.txt")));
+        Assert.assertNull(changes.get(new File("c/three.txt")));
+    }
+
+    /**
+     * Check whether a tree is shared when a file outside it changes.
+     */
+    @Test
+    public void testUnchangedSubtree() {
+        HashMap<File, String> tracked = new HashMap<>();
+        tracked.put(new File("top.txt"), Utils.sha1("top"));
+        tracked.put(new File("a/one.txt"), Utils.sha1("one"));
+        String root = Tree.build(tracked, true);
+        String next = Tree.update(root, Map.of(new File("top.txt"), Utils.sha1("new")), true);
+
+        Set<String> before = new HashSet<>(), after = new HashSet<>();
+        Tree.reachable(root, before, new ArrayList<>());
+        Tree.reachable(next, after, new ArrayList<>());
+        after.retainAll(before);
+        Assert.assertEquals(Set.of(Tree.build(Map.of(new File("one.txt"),
+                Utils.sha1("one")), false)), after);
+    }
+
+    /**
+     * Check whether paths with {@code .} components are stored and looked
+     * up under the same names as the paths without them.
+     */
+    @Test
+    public void testDotComponents() {
+        HashMap<File, String> tracked = new HashMap<>();
+        tracked.put(new File("./top.txt"), Utils.sha1("dot top"));
+        tracked.put(new File("a/./one.txt"), Utils.sha1("dot one"));
+        Commit commit = new Commit("dots", new Date(7000L), tracked, new String[0]);
+        commit.store();
+
+        Commit read = (Commit) GitletObject.read(commit.sha1());
+        Assert.assertEquals(Utils.sha1("dot top"), read.getFile(new File("top.txt")));
+        Assert.assertEquals(Utils.sha1("dot one"), read.getFile(new File("./a/one.txt")));
+        Assert.assertEquals(Set.of(new File("top.txt"), new File("a/one.txt")),
+                read.getTracked().keySet());
+    }
+}
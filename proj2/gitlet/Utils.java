@@ -2,6 +2,7 @@ package gitlet;
 
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FilenameFilter;
@@ -9,13 +10,13 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
 
 
@@ -52,11 +53,7 @@ class Utils {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
-            }
-            return result.toString();
+            return toHex(md.digest());
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
@@ -70,6 +67,44 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /**
+     * Returns a new SHA-1 message digest, for hashing data that is
+     * not available all at once.
+     */
+    static MessageDigest sha1Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /**
+     * Returns the hexadecimal numeral of the bytes in B, such as
+     * the result of a message digest.
+     */
+    static String toHex(byte[] b) {
+        StringBuilder result = new StringBuilder();
+        for (byte x : b) {
+            result.append(Character.forDigit((x >> 4) & 0xf, 16))
+                    .append(Character.forDigit(x & 0xf, 16));
+        }
+        return result.toString();
+    }
+
+    /**
+     * Returns the bytes denoted by the hexadecimal numeral S, which
+     * must have an even number of digits.
+     */
+    static byte[] fromHex(String s) {
+        byte[] result = new byte[s.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = (byte) (Character.digit(s.charAt(2 * i), 16) << 4
+                    | Character.digit(s.charAt(2 * i + 1), 16));
+        }
+        return result;
+    }
+
     /* FILE DELETION */
 
     /**
@@ -253,6 +288,44 @@ class Utils {
     }
 
 
+    /* BINARY ENCODING UTILITIES */
+
+    /**
+     * Writes string S to OUT as its length in UTF-8 bytes, a 4-byte
+     * integer, followed by those bytes.
+     */
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    /**
+     * Reads a string written by writeString from IN.
+     */
+    static String readString(ByteBuffer in) {
+        byte[] b = new byte[in.getInt()];
+        in.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the 40-character SHA-1 value S to OUT as 20 raw bytes.
+     */
+    static void writeSha1(DataOutputStream out, String s) throws IOException {
+        out.write(fromHex(s));
+    }
+
+    /**
+     * Reads a SHA-1 value written by writeSha1 from IN.
+     */
+    static String readSha1(ByteBuffer in) {
+        byte[] b = new byte[UID_LENGTH / 2];
+        in.get(b);
+        return toHex(b);
+    }
+
+
 
     /* MESSAGES AND ERROR REPORTING */
 
@@ -264,6 +337,27 @@ class Utils {
         return new GitletException(String.format(msg, args));
     }
 
+    /**
+     * Number of characters buffered by commands that print many lines
+     * before they are printed, see {@link Utils#flush(StringBuilder, boolean)}.
+     */
+    static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Prints and empties OUT if it holds at least OUTPUT_BUFFER_SIZE
+     * characters, or if FORCE is true. Returns false if the standard output
+     * can no longer be written, for instance because the reader of a pipe
+     * has gone, so that a command printing many lines can stop early.
+     */
+    static boolean flush(StringBuilder out, boolean force) {
+        if (force || out.length() >= OUTPUT_BUFFER_SIZE) {
+            System.out.print(out);
+            out.setLength(0);
+            return !System.out.checkError();
+        }
+        return true;
+    }
+
     /**
      * Print a message composed from MSG and ARGS as for the String.format
      * method, followed by a newline.
@@ -273,8 +367,25 @@ class Utils {
         System.out.println();
     }
 
+    /**
+     * Print a message composed from MSG and ARGS as for the String.format
+     * method, followed by a newline, and end the current command. The
+     * command is ended by throwing an {@link Exit}, which {@link Main}
+     * catches, so that a {@link Daemon} can go on serving commands.
+     */
     static void exit(String msg, Object... args) {
         message(msg, args);
-        System.exit(0);
+        throw new Exit();
+    }
+
+    /**
+     * Thrown by {@link Utils#exit(String, Object...)} to end a command
+     * after its message has been printed.
+     */
+    static class Exit extends GitletException {
+        /**
+         * Declared since exceptions are serializable.
+         */
+        private static final long serialVersionUID = 1L;
     }
 }
@@ -0,0 +1,99 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs tasks on many files, such as hashing them or writing blobs to them,
+ * on a bounded pool of worker threads.
+ * <p>
+ * The number of threads is given by the {@code threads} configuration key,
+ * see {@link Config}, and defaults to the number of available processors.
+ * Results are returned in the order of the input, so output does not depend
+ * on how tasks are scheduled. If tasks fail, the failure of the first of them
+ * in input order is rethrown, as it would be if they ran one after another.
+ *
+ * @author Fei Pan
+ */
+public class Workers {
+    /**
+     * Returns the number of worker threads to use.
+     *
+     * @return the number of threads, at least 1
+     */
+    static int threads() {
+        String value = Config.get("threads", null);
+        if (value == null) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return Math.max(1, Integer.parseInt(value));
+    }
+
+    /**
+     * Applies the specified task to every item and returns the results,
+     * in the order of the items.
+     *
+     * @param items items to process
+     * @param task  task to apply to each item
+     * @param <T>   type of the items
+     * @param <R>   type of the results
+     * @return the results
+     */
+    public static <T, R> List<R> map(List<T> items, Function<? super T, ? extends R> task) {
+        List<R> results = new ArrayList<>(items.size());
+        int threads = Math.min(threads(), items.size());
+        if (threads <= 1) {
+            for (T item : items) {
+                results.add(task.apply(item));
+            }
+            return results;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<? extends R>> futures = new ArrayList<>(items.size());
+            for (T item : items) {
+                futures.add(pool.submit(() -> task.apply(item)));
+            }
+            for (Future<? extends R> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalArgumentException(cause.getMessage());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Performs the specified action on every item.
+     *
+     * @param items  items to process
+     * @param action action to perform on each item
+     * @param <T>    type of the items
+     * @see Workers#map(List, Function)
+     */
+    public static <T> void forEach(List<T> items, Consumer<? super T> action) {
+        map(items, item -> {
+            action.accept(item);
+            return null;
+        });
+    }
+}